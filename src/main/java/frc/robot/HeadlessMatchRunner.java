@@ -0,0 +1,248 @@
+package frc.robot;
+
+import com.sun.management.ThreadMXBean;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj.simulation.XboxControllerSim;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.limelight.SimulatedLimelight;
+import frc.robot.swerve.SimulatedSwerveDriveSubsystem;
+import frc.robot.util.profiling.LatencyHistogram;
+import frc.robot.util.profiling.LoopProfiler;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Plays a whole match through {@link Robot} with no driver station and no
+ * waiting: the FPGA clock is paused and stepped 20ms at a time, so the loop
+ * runs back to back as fast as the CPU allows and every run is the same.
+ * The match is a second disabled, autonomous, teleop, and another second
+ * disabled.
+ *
+ * Inputs are scripted: a {@link MatchScript} moves the controller sticks
+ * every loop, and the cameras are {@link SimulatedLimelight}s looking at the
+ * simulated drivetrain's true pose, publishing on the stepped clock rather
+ * than their own threads.
+ *
+ * At the end it prints, for the loops after warm-up:
+ * <ul>
+ *     <li>wall time per loop (p50/p99/max) and each {@link LoopProfiler} section</li>
+ *     <li>bytes allocated per loop on the robot thread</li>
+ *     <li>when each command started and stopped</li>
+ * </ul>
+ *
+ * Run it with <code>./gradlew simulateMatch</code>, which passes these
+ * (optional) arguments:
+ * <ol>
+ *     <li>autonomous seconds (default 15)</li>
+ *     <li>teleop seconds (default 135)</li>
+ *     <li>camera frames per second (default 30)</li>
+ *     <li>p99 loop time budget in ms (default 0, meaning no limit)</li>
+ *     <li>allocation budget in bytes per loop (default 0, meaning no limit)</li>
+ * </ol>
+ * If a budget is given and exceeded, the process exits with status 1, so this
+ * can gate a build.
+ */
+public class HeadlessMatchRunner {
+
+    public static final double LOOP_SECONDS = 0.02;
+    public static final double DISABLED_SECONDS = 1.0;
+    public static final double CAMERA_LATENCY_MS = 25.0;
+    public static final int WARMUP_LOOPS = 100;
+    public static final int MAX_EVENTS = 4096;
+
+    private static final String [] EVENT_NAMES = { "start", "finish", "interrupt" };
+
+    /**
+     * Moves the controls for one loop
+     */
+    @FunctionalInterface
+    public interface MatchScript {
+        void apply(double matchSeconds, boolean autonomous, XboxControllerSim controller);
+    }
+
+    /**
+     * Sweeps the arm stick up and down through teleop
+     */
+    public static final MatchScript DEFAULT_SCRIPT = (matchSeconds, autonomous, controller) ->
+            controller.setLeftY(autonomous ? 0.0 : -0.5 * Math.sin(matchSeconds * 0.5));
+
+    // exposes the loop (the same one TimedRobot runs) so we can call it ourselves
+    static class HarnessRobot extends Robot {
+        void step() {
+            loopFunc();
+        }
+    }
+
+    // command timeline, in preallocated arrays so recording doesn't count
+    // against the robot's allocations
+    private static final double [] eventTimes = new double[MAX_EVENTS];
+    private static final int [] eventKinds = new int[MAX_EVENTS];
+    private static final Command [] eventCommands = new Command[MAX_EVENTS];
+    private static int eventCount = 0;
+    private static double matchSeconds = 0.0;
+
+    public static void main(String [] args) {
+
+        double autoSeconds = arg(args, 0, 15.0);
+        double teleopSeconds = arg(args, 1, 135.0);
+        double cameraFps = arg(args, 2, 30.0);
+        double maxP99Ms = arg(args, 3, 0.0);
+        double maxBytesPerLoop = arg(args, 4, 0.0);
+
+        System.exit(run(DEFAULT_SCRIPT, autoSeconds, teleopSeconds, cameraFps, maxP99Ms, maxBytesPerLoop) ? 0 : 1);
+    }
+
+    /**
+     * Plays one match and prints the report (once per process - the robot
+     * and the simulated HAL aren't built to be started twice)
+     * @return false if a budget was exceeded
+     */
+    public static boolean run(MatchScript script, double autoSeconds, double teleopSeconds,
+                              double cameraFps, double maxP99Ms, double maxBytesPerLoop) {
+
+        HAL.initialize(500, 0);
+        SimHooks.pauseTiming();
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.notifyNewData();
+
+        HarnessRobot robot = new HarnessRobot();
+        robot.robotInit();
+
+        CommandScheduler scheduler = CommandScheduler.getInstance();
+        scheduler.onCommandInitialize(command -> recordEvent(0, command));
+        scheduler.onCommandFinish(command -> recordEvent(1, command));
+        scheduler.onCommandInterrupt(command -> recordEvent(2, command));
+
+        NetworkTableInstance instance = NetworkTableInstance.getDefault();
+        SimulatedSwerveDriveSubsystem drive = robot.getSimulatedDrive();
+        SimulatedLimelight [] cameras = {
+                new SimulatedLimelight(instance, "limelight-front", Robot.FRONT_CAMERA_MOUNT, drive::getTruePose, 1L),
+                new SimulatedLimelight(instance, "limelight-rear", Robot.REAR_CAMERA_MOUNT, drive::getTruePose, 2L)
+        };
+
+        XboxControllerSim controller = new XboxControllerSim(0);
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LatencyHistogram loopTimes = new LatencyHistogram(LoopProfiler.BUCKET_MICROS, LoopProfiler.BUCKET_COUNT);
+
+        double autoEnd = DISABLED_SECONDS + autoSeconds;
+        double teleopEnd = autoEnd + teleopSeconds;
+        double matchEnd = teleopEnd + DISABLED_SECONDS;
+        double framesPerLoop = cameraFps * LOOP_SECONDS;
+        double frameCredit = 0.0;
+        long loops = 0;
+        long measured = 0;
+        long totalBytes = 0;
+        long maxBytes = 0;
+        long allocatingLoops = 0;
+        long started = System.nanoTime();
+
+        System.out.printf("playing %.0fs auto + %.0fs teleop, cameras at %.0f fps%n", autoSeconds, teleopSeconds, cameraFps);
+
+        while (matchSeconds < matchEnd) {
+
+            boolean autonomous = matchSeconds < autoEnd;
+            boolean enabled = matchSeconds >= DISABLED_SECONDS && matchSeconds < teleopEnd;
+            DriverStationSim.setAutonomous(autonomous);
+            DriverStationSim.setEnabled(enabled);
+            DriverStationSim.setMatchTime(enabled ? (autonomous ? autoEnd : teleopEnd) - matchSeconds : -1.0);
+            script.apply(matchSeconds, autonomous, controller);
+            DriverStationSim.notifyNewData();
+
+            // cameras publish at their own rate; let the listeners pick the
+            // frames up before the loop runs, so every run sees the same thing
+            frameCredit += framesPerLoop;
+            if (frameCredit >= 1.0) {
+                while (frameCredit >= 1.0) {
+                    for (SimulatedLimelight camera : cameras) {
+                        camera.publishFrame(CAMERA_LATENCY_MS);
+                    }
+                    frameCredit -= 1.0;
+                }
+                instance.waitForListenerQueue(0.1);
+            }
+
+            long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            robot.step();
+            long elapsedMicros = (System.nanoTime() - startNanos) / 1_000L;
+            long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+
+            if (loops == WARMUP_LOOPS) {
+                // the first loops are all class loading and JIT
+                LoopProfiler.reset();
+            }
+            if (loops >= WARMUP_LOOPS) {
+                loopTimes.record(elapsedMicros);
+                totalBytes += bytes;
+                maxBytes = Math.max(maxBytes, bytes);
+                if (bytes > 0) {
+                    allocatingLoops++;
+                }
+                measured++;
+            }
+
+            SimHooks.stepTiming(LOOP_SECONDS);
+            matchSeconds += LOOP_SECONDS;
+            loops++;
+        }
+
+        double wall = (System.nanoTime() - started) / 1e9;
+        double p99Ms = loopTimes.getPercentile(0.99) / 1000.0;
+        double bytesPerLoop = measured > 0 ? (double) totalBytes / measured : 0.0;
+
+        System.out.printf("loops:              %d (%d measured after warm-up)%n", loops, measured);
+        System.out.printf("wall time:          %.2fs (%.1fx realtime)%n", wall, matchEnd / wall);
+        System.out.printf("loop time:          p50 %.3fms, p99 %.3fms, max %.3fms%n",
+                loopTimes.getPercentile(0.50) / 1000.0, p99Ms, loopTimes.getMax() / 1000.0);
+        System.out.printf("allocation:         %.0f bytes/loop average, %d max, %d of %d loops allocated%n",
+                bytesPerLoop, maxBytes, allocatingLoops, measured);
+        System.out.printf("overruns:           %d%n", LoopProfiler.getOverruns());
+        System.out.printf("final pose:         true %s, estimated %s%n", drive.getTruePose(), drive.getPose());
+
+        System.out.println("sections:");
+        for (LoopProfiler.Section section : LoopProfiler.getSections()) {
+            LatencyHistogram histogram = section.getHistogram();
+            System.out.printf("  %-50s p50 %.3fms, p99 %.3fms, max %.3fms%n", section.getName(),
+                    histogram.getPercentile(0.50) / 1000.0,
+                    histogram.getPercentile(0.99) / 1000.0,
+                    histogram.getMax() / 1000.0);
+        }
+
+        System.out.println("commands:");
+        for (int i=0; i<eventCount; i++) {
+            System.out.printf("  %8.2fs  %-9s %s%n", eventTimes[i], EVENT_NAMES[eventKinds[i]], eventCommands[i].getName());
+        }
+        if (eventCount == MAX_EVENTS) {
+            System.out.println("  (timeline full; later events were not recorded)");
+        }
+
+        boolean ok = true;
+        if (maxP99Ms > 0.0 && p99Ms > maxP99Ms) {
+            System.out.printf("FAILED: p99 loop time %.3fms is over the %.3fms budget%n", p99Ms, maxP99Ms);
+            ok = false;
+        }
+        if (maxBytesPerLoop > 0.0 && bytesPerLoop > maxBytesPerLoop) {
+            System.out.printf("FAILED: %.0f bytes/loop is over the %.0f byte budget%n", bytesPerLoop, maxBytesPerLoop);
+            ok = false;
+        }
+        return ok;
+    }
+
+    private static void recordEvent(int kind, Command command) {
+        if (eventCount < MAX_EVENTS) {
+            eventTimes[eventCount] = matchSeconds;
+            eventKinds[eventCount] = kind;
+            eventCommands[eventCount] = command;
+            eventCount++;
+        }
+    }
+
+    private static double arg(String [] args, int idx, double defaultValue) {
+        return args.length > idx ? Double.parseDouble(args[idx]) : defaultValue;
+    }
+}
@@ -0,0 +1,391 @@
+package frc.robot;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.robot.arm.ArmSubsystem;
+import frc.robot.limelight.LimelightFrameQueue;
+import frc.robot.limelight.LimelightSubsystem;
+import frc.robot.swerve.SimulatedSwerveDriveSubsystem;
+import frc.robot.swerve.SwerveDriveSubsystem;
+import frc.robot.util.logging.ReplayLog;
+import frc.robot.util.profiling.LatencyHistogram;
+import frc.robot.util.profiling.LoopProfiler;
+import frc.robot.util.telemetry.TelemetryEngine;
+import frc.robot.wheel.WheelSubsystem;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Plays a match recorded on the robot back through {@link Robot}, loop for
+ * loop, as fast as the CPU allows. The log has to come from a robot that was
+ * recording its inputs (every subsystem that can be replayed logs what it
+ * read each loop, and the logger records the driver station); the FPGA clock
+ * is paused and stepped to each recorded loop's timestamp, and before each
+ * loop runs we hand it:
+ * <ul>
+ *     <li>the driver station state and joysticks, as they were</li>
+ *     <li>the arm and wheel sensor values they read in that loop</li>
+ *     <li>the camera frames they took off their queues in that loop</li>
+ *     <li>the drivetrain's odometry updates from that loop, which move the
+ *     pose estimator the way the real robot moved</li>
+ * </ul>
+ * Since the subsystems see exactly what they saw on the field, changing a
+ * tunable (pass <code>group/name=value</code> arguments, the same values the
+ * dashboard shows) and replaying shows what the robot would have done with
+ * it. The replay writes its own log as it goes, which can be compared to the
+ * original.
+ *
+ * The drivetrain isn't driven by the replayed commands (we can't know what
+ * it would have done differently); it just follows the recorded odometry,
+ * so vision filtering and fusion see the same motion they did on the field.
+ *
+ * Run it with <code>./gradlew replayMatch --args="path/to/log.wpilog"</code>.
+ */
+public class LogReplayRunner {
+
+    public static final String DS_PREFIX = "DS:";
+    public static final int MAX_JOYSTICKS = 6;
+
+    public static void main(String [] args) throws IOException {
+
+        if (args.length < 1) {
+            System.out.println("usage: LogReplayRunner <log file> [group/name=value ...]");
+            System.exit(2);
+        }
+
+        HAL.initialize(500, 0);
+        SimHooks.pauseTiming();
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.notifyNewData();
+
+        HeadlessMatchRunner.HarnessRobot robot = new HeadlessMatchRunner.HarnessRobot();
+        robot.robotInit();
+        robot.startReplay();
+
+        for (int i=1; i<args.length; i++) {
+            applyOverride(args[i]);
+        }
+
+        SimulatedSwerveDriveSubsystem drive = robot.getSimulatedDrive();
+        LimelightSubsystem [] cameras = { robot.getFrontCamera(), robot.getRearCamera() };
+        String armName = ArmSubsystem.INPUTS_LOG;
+        String shooterName = WheelSubsystem.getInputsLogName(1);
+        String intakeName = WheelSubsystem.getInputsLogName(2);
+        String frontName = LimelightSubsystem.getInputsLogName(cameras[0].getTableName());
+        String rearName = LimelightSubsystem.getInputsLogName(cameras[1].getTableName());
+
+        Set<String> wanted = new HashSet<>();
+        wanted.add(Robot.LOOP_LOG);
+        wanted.add(SwerveDriveSubsystem.ODOMETRY_LOG);
+        wanted.add(armName);
+        wanted.add(shooterName);
+        wanted.add(intakeName);
+        wanted.add(frontName);
+        wanted.add(rearName);
+
+        long loadStarted = System.nanoTime();
+        ReplayLog log = new ReplayLog(args[0], name -> wanted.contains(name) || name.startsWith(DS_PREFIX));
+        double loadSeconds = (System.nanoTime() - loadStarted) / 1e9;
+
+        ReplayLog.Channel loops = log.getChannel(Robot.LOOP_LOG);
+        if (loops == null || loops.size() == 0) {
+            System.out.println("no " + Robot.LOOP_LOG + " records in " + args[0] + " (was it recorded with inputs?)");
+            System.exit(1);
+        }
+
+        ReplayLog.Channel odometry = log.getChannel(SwerveDriveSubsystem.ODOMETRY_LOG);
+        if (odometry == null) {
+            System.out.println("warning: no " + SwerveDriveSubsystem.ODOMETRY_LOG + " records; the drivetrain will stand still");
+        }
+
+        Replayer [] replayers = {
+                new DriverStationReplayer(log),
+                new SensorReplayer(odometry, values -> drive.replayOdometry(values, 0)),
+                new SensorReplayer(log.getChannel(armName), values -> robot.getArm().replaySensors((long) values[0], values, 1)),
+                new SensorReplayer(log.getChannel(shooterName), values -> robot.getShooter().replaySensors((long) values[0], values, 1)),
+                new SensorReplayer(log.getChannel(intakeName), values -> robot.getIntake().replaySensors((long) values[0], values, 1)),
+                new CameraReplayer(log.getChannel(frontName), cameras[0]),
+                new CameraReplayer(log.getChannel(rearName), cameras[1])
+        };
+
+        System.out.printf("replaying %d loops (%d records, loaded in %.2fs) from %s%n",
+                loops.size(), log.getRecords(), loadSeconds, args[0]);
+
+        LatencyHistogram loopTimes = new LatencyHistogram(LoopProfiler.BUCKET_MICROS, LoopProfiler.BUCKET_COUNT);
+        long started = System.nanoTime();
+
+        for (int i=0; i<loops.size(); i++) {
+
+            long tick = loops.getTimestamp(i);
+            long next = i + 1 < loops.size() ? loops.getTimestamp(i + 1) : Long.MAX_VALUE;
+
+            long behind = tick - RobotController.getFPGATime();
+            if (behind > 0) {
+                SimHooks.stepTiming(behind / 1e6);
+            }
+            for (Replayer replayer : replayers) {
+                replayer.deliver(tick, next);
+            }
+
+            long startNanos = System.nanoTime();
+            robot.step();
+            loopTimes.record((System.nanoTime() - startNanos) / 1_000L);
+        }
+
+        double wall = (System.nanoTime() - started) / 1e9;
+        double span = (loops.getTimestamp(loops.size() - 1) - loops.getTimestamp(0)) / 1e6;
+
+        System.out.printf("loops:              %d%n", loops.size());
+        System.out.printf("match time:         %.2fs%n", span);
+        System.out.printf("wall time:          %.2fs (%.1fx realtime)%n", wall, span / wall);
+        System.out.printf("loop time:          p50 %.3fms, p99 %.3fms, max %.3fms%n",
+                loopTimes.getPercentile(0.50) / 1000.0,
+                loopTimes.getPercentile(0.99) / 1000.0,
+                loopTimes.getMax() / 1000.0);
+        for (Replayer replayer : replayers) {
+            replayer.report();
+        }
+
+        System.out.println("sections:");
+        for (LoopProfiler.Section section : LoopProfiler.getSections()) {
+            LatencyHistogram histogram = section.getHistogram();
+            System.out.printf("  %-50s p50 %.3fms, p99 %.3fms, max %.3fms%n", section.getName(),
+                    histogram.getPercentile(0.50) / 1000.0,
+                    histogram.getPercentile(0.99) / 1000.0,
+                    histogram.getMax() / 1000.0);
+        }
+
+        System.exit(0);
+    }
+
+    // "group/name=value"; group names can have slashes in them, so the
+    // property name is whatever comes after the last one
+    private static void applyOverride(String arg) {
+        int equals = arg.indexOf('=');
+        int slash = equals < 0 ? -1 : arg.lastIndexOf('/', equals);
+        if (slash < 0) {
+            throw new IllegalArgumentException("expected group/name=value: " + arg);
+        }
+        String group = arg.substring(0, slash);
+        String name = arg.substring(slash + 1, equals);
+        String value = arg.substring(equals + 1);
+        if (!TelemetryEngine.write(group, name, value)) {
+            throw new IllegalArgumentException("can't set " + group + "/" + name + " to " + value);
+        }
+        System.out.printf("override %s/%s = %s%n", group, name, value);
+    }
+
+    /**
+     * Feeds one kind of recorded input back to the robot
+     */
+    private interface Replayer {
+
+        /**
+         * Hands over the records that belong to the loop starting at tick
+         * (the next loop starts at next)
+         */
+        void deliver(long tick, long next);
+
+        void report();
+    }
+
+    /**
+     * Values that a subsystem logged in periodic() (sensor readings, or
+     * odometry); they were recorded during the loop, so they go to the loop
+     * they were recorded in
+     */
+    private static class SensorReplayer implements Replayer {
+
+        @FunctionalInterface
+        interface Target {
+            void replay(double [] values);
+        }
+
+        private final ReplayLog.Channel channel;
+        private final Target target;
+        private int idx;
+
+        SensorReplayer(ReplayLog.Channel channel, Target target) {
+            this.channel = channel;
+            this.target = target;
+        }
+
+        @Override
+        public void deliver(long tick, long next) {
+            if (channel == null) {
+                return;
+            }
+            while (idx < channel.size() && channel.getTimestamp(idx) < next) {
+                target.replay(channel.getValues(idx++));
+            }
+        }
+
+        @Override
+        public void report() {
+            if (channel != null) {
+                System.out.printf("%-20s%d records%n", channel.getName() + ":", channel.size());
+            }
+        }
+    }
+
+    /**
+     * Camera frames that a subsystem took off its queue, in the chunks they
+     * were logged in (see LimelightSubsystem); frames are put back together
+     * and queued again for the loop that read them
+     */
+    private static class CameraReplayer implements Replayer {
+
+        private final ReplayLog.Channel channel;
+        private final LimelightSubsystem camera;
+        private final double [] frame;
+        private int idx;
+        private long frames;
+        private long partial;
+
+        CameraReplayer(ReplayLog.Channel channel, LimelightSubsystem camera) {
+            this.channel = channel;
+            this.camera = camera;
+            this.frame = new double[LimelightFrameQueue.FRAME_VALUES];
+        }
+
+        @Override
+        public void deliver(long tick, long next) {
+            if (channel == null) {
+                return;
+            }
+            while (idx < channel.size() && channel.getTimestamp(idx) < next) {
+                double [] values = channel.getValues(idx++);
+                int kind = (int) values[0];
+                long timestamp = (long) values[1];
+                int length = Math.min((int) values[2], frame.length);
+                int offset = (int) values[3];
+                int count = Math.max(0, Math.min(values.length - 4, length - offset));
+                System.arraycopy(values, 4, frame, offset, count);
+                if (offset + LimelightSubsystem.INPUT_CHUNK_VALUES >= length) {
+                    camera.replayFrame(kind, timestamp, frame, length);
+                    frames++;
+                } else if (idx == channel.size()) {
+                    partial++;
+                }
+            }
+        }
+
+        @Override
+        public void report() {
+            if (channel != null) {
+                System.out.printf("%-20s%d frames%s%n", camera.getTableName() + ":", frames,
+                        partial > 0 ? " (last frame incomplete)" : "");
+            }
+        }
+    }
+
+    /**
+     * Driver station state and joysticks, as recorded by WPILib. The robot
+     * reads these at the very start of the loop, so they're applied up to
+     * (and including) the loop's own timestamp.
+     */
+    private static class DriverStationReplayer implements Replayer {
+
+        private final ReplayLog.Channel enabled;
+        private final ReplayLog.Channel autonomous;
+        private final ReplayLog.Channel test;
+        private final ReplayLog.Channel [] axes;
+        private final ReplayLog.Channel [] buttons;
+        private final ReplayLog.Channel [] povs;
+        private final int [] idx;
+        private long changes;
+
+        DriverStationReplayer(ReplayLog log) {
+            enabled = log.getChannel(DS_PREFIX + "enabled");
+            autonomous = log.getChannel(DS_PREFIX + "autonomous");
+            test = log.getChannel(DS_PREFIX + "test");
+            axes = new ReplayLog.Channel[MAX_JOYSTICKS];
+            buttons = new ReplayLog.Channel[MAX_JOYSTICKS];
+            povs = new ReplayLog.Channel[MAX_JOYSTICKS];
+            for (int i=0; i<MAX_JOYSTICKS; i++) {
+                axes[i] = log.getChannel(DS_PREFIX + "joystick" + i + "/axes");
+                buttons[i] = log.getChannel(DS_PREFIX + "joystick" + i + "/buttons");
+                povs[i] = log.getChannel(DS_PREFIX + "joystick" + i + "/povs");
+            }
+            idx = new int[3 + MAX_JOYSTICKS * 3];
+        }
+
+        @Override
+        public void deliver(long tick, long next) {
+
+            long before = changes;
+
+            double [] value = latest(enabled, 0, tick);
+            if (value != null) {
+                DriverStationSim.setEnabled(value[0] != 0.0);
+            }
+            value = latest(autonomous, 1, tick);
+            if (value != null) {
+                DriverStationSim.setAutonomous(value[0] != 0.0);
+            }
+            value = latest(test, 2, tick);
+            if (value != null) {
+                DriverStationSim.setTest(value[0] != 0.0);
+            }
+
+            for (int stick=0; stick<MAX_JOYSTICKS; stick++) {
+                int base = 3 + stick * 3;
+                value = latest(axes[stick], base, tick);
+                if (value != null) {
+                    DriverStationSim.setJoystickAxisCount(stick, value.length);
+                    for (int i=0; i<value.length; i++) {
+                        DriverStationSim.setJoystickAxis(stick, i, value[i]);
+                    }
+                }
+                value = latest(buttons[stick], base + 1, tick);
+                if (value != null) {
+                    DriverStationSim.setJoystickButtonCount(stick, value.length);
+                    for (int i=0; i<value.length; i++) {
+                        // buttons are numbered from 1
+                        DriverStationSim.setJoystickButton(stick, i + 1, value[i] != 0.0);
+                    }
+                }
+                value = latest(povs[stick], base + 2, tick);
+                if (value != null) {
+                    DriverStationSim.setJoystickPOVCount(stick, value.length);
+                    for (int i=0; i<value.length; i++) {
+                        DriverStationSim.setJoystickPOV(stick, i, (int) value[i]);
+                    }
+                }
+            }
+
+            if (changes != before) {
+                DriverStationSim.notifyNewData();
+            }
+        }
+
+        // the newest record at or before tick, if there's been one since the
+        // last time we looked
+        private double [] latest(ReplayLog.Channel channel, int slot, long tick) {
+            if (channel == null) {
+                return null;
+            }
+            int start = idx[slot];
+            int end = start;
+            while (end < channel.size() && channel.getTimestamp(end) <= tick) {
+                end++;
+            }
+            if (end == start) {
+                return null;
+            }
+            idx[slot] = end;
+            changes++;
+            return channel.getValues(end - 1);
+        }
+
+        @Override
+        public void report() {
+            System.out.printf("%-20s%d changes%n", "driver station:", changes);
+        }
+    }
+}
@@ -1,14 +1,25 @@
 package frc.robot;
 
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import frc.robot.arm.ArmTeleopCommand;
 import frc.robot.limelight.AprilTagPoseEstimateCommand;
+import frc.robot.limelight.CameraMount;
+import frc.robot.limelight.FieldTagLayout;
 import frc.robot.arm.ArmSubsystem;
-import frc.robot.swerve.MockSwerveDriveSubsystem;
+import frc.robot.swerve.PhoenixSwerveDriveSubsystem;
+import frc.robot.swerve.SimulatedSwerveDriveSubsystem;
 import frc.robot.swerve.SwerveDriveSubsystem;
+import frc.robot.limelight.LimelightFleet;
 import frc.robot.limelight.LimelightSubsystem;
+import frc.robot.limelight.SimulatedLimelight;
+import frc.robot.util.MotorOutputGateway;
+import frc.robot.util.SensorSampler;
+import frc.robot.util.logging.EventLog;
+import frc.robot.util.profiling.LoopProfiler;
+import frc.robot.util.telemetry.TelemetryEngine;
 import frc.robot.wheel.WheelSubsystem;
 
 /**
@@ -19,12 +30,28 @@ import frc.robot.wheel.WheelSubsystem;
  */
 public class Robot extends TimedRobot {
 
+    // Set this to false to go back to reading motor sensors from periodic()
+    public static final boolean USE_SENSOR_SAMPLER = true;
+
+    // Where the cameras sit on the robot (measure these on the real thing)
+    public static final CameraMount FRONT_CAMERA_MOUNT = new CameraMount(0.30, 0.0, 0.25, 0.0, Math.toRadians(25.0));
+    public static final CameraMount REAR_CAMERA_MOUNT = new CameraMount(-0.30, 0.0, 0.25, Math.PI, Math.toRadians(25.0));
+
+    // Marks the start of every loop in the log, so a replay knows where loops begin
+    public static final String LOOP_LOG = "Robot/Loop";
+
     private XboxController controller;
+    private SensorSampler sampler;
     private ArmSubsystem arm;
     private WheelSubsystem shooter;
     private WheelSubsystem intake;
-    private LimelightSubsystem limelight;
+    private LimelightSubsystem frontCamera;
+    private LimelightSubsystem rearCamera;
+    private LimelightFleet cameras;
     private SwerveDriveSubsystem drive;
+    private SimulatedSwerveDriveSubsystem simulatedDrive;
+    private EventLog loopLog;
+    private long loopCount;
 
     /**
      * This function is run when the robot is first started up and should be used for any
@@ -33,9 +60,18 @@ public class Robot extends TimedRobot {
     @Override
     public void robotInit() {
 
+        TelemetryEngine.enableLogging();
+        LoopProfiler.profileCommands(CommandScheduler.getInstance());
+        loopLog = new EventLog(LOOP_LOG, "loop");
+
         controller = new XboxController(0);
 
-        drive = new MockSwerveDriveSubsystem();
+        if (RobotBase.isReal()) {
+            drive = new PhoenixSwerveDriveSubsystem();
+        } else {
+            simulatedDrive = new SimulatedSwerveDriveSubsystem();
+            drive = simulatedDrive;
+        }
 
         arm = new ArmSubsystem(3, 4);
         arm.setDefaultCommand(new ArmTeleopCommand(arm, () -> -controller.getLeftY()));
@@ -46,13 +82,86 @@ public class Robot extends TimedRobot {
         intake = new WheelSubsystem(2);
         intake.setDefaultCommand(intake.stopCommand());
 
-        limelight = new LimelightSubsystem(drive::getPose);
-        limelight.setDefaultCommand(new AprilTagPoseEstimateCommand(limelight, drive));
+        if (USE_SENSOR_SAMPLER) {
+            sampler = new SensorSampler();
+            arm.useSampler(sampler);
+            shooter.useSampler(sampler);
+            intake.useSampler(sampler);
+            sampler.start();
+        }
+
+        FieldTagLayout.load();
+        frontCamera = new LimelightSubsystem("limelight-front");
+        frontCamera.setMount(FRONT_CAMERA_MOUNT);
+        rearCamera = new LimelightSubsystem("limelight-rear");
+        rearCamera.setMount(REAR_CAMERA_MOUNT);
+        cameras = new LimelightFleet(frontCamera, rearCamera);
+        cameras.setOrientationSource(drive);
+        cameras.setDefaultCommand(new AprilTagPoseEstimateCommand(cameras, drive));
+    }
+
+    /**
+     * @return the simulated drivetrain (null on a real robot)
+     */
+    SimulatedSwerveDriveSubsystem getSimulatedDrive() {
+        return simulatedDrive;
+    }
+
+    /**
+     * Switches every subsystem that records its inputs over to replaying
+     * them instead: the sensor sampler stops reading hardware, the cameras
+     * stop listening to NetworkTables, and the simulated drivetrain stops
+     * simulating
+     */
+    void startReplay() {
+        if (sampler != null) {
+            sampler.stop();
+        }
+        if (simulatedDrive != null) {
+            simulatedDrive.startReplay();
+        }
+        frontCamera.startReplay();
+        rearCamera.startReplay();
+    }
+
+    ArmSubsystem getArm() {
+        return arm;
+    }
+
+    WheelSubsystem getShooter() {
+        return shooter;
+    }
+
+    WheelSubsystem getIntake() {
+        return intake;
+    }
+
+    LimelightSubsystem getFrontCamera() {
+        return frontCamera;
+    }
+
+    LimelightSubsystem getRearCamera() {
+        return rearCamera;
     }
 
     @Override
     public void robotPeriodic() {
+        loopLog.begin().add(loopCount++).end();
+        LoopProfiler.beginLoop();
+        MotorOutputGateway.beginLoop();
         CommandScheduler.getInstance().run();
+        TelemetryEngine.update();
+        LoopProfiler.endLoop();
+    }
+
+    /**
+     * In simulation there are no cameras, so we stand in for them using the
+     * simulated drivetrain's true pose
+     */
+    @Override
+    public void simulationInit() {
+        new SimulatedLimelight("limelight-front", FRONT_CAMERA_MOUNT, simulatedDrive::getTruePose).start();
+        new SimulatedLimelight("limelight-rear", REAR_CAMERA_MOUNT, simulatedDrive::getTruePose).start();
     }
 
     @Override
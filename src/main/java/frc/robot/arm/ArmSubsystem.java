@@ -9,8 +9,17 @@ import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.ArmFeedforward;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.DutyCycleEncoder;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.MotorOutputGateway;
+import frc.robot.util.SensorSampler;
+import frc.robot.util.SensorSnapshot;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.SparkMaxFrameProfile;
+import frc.robot.util.logging.EventLog;
+import frc.robot.util.profiling.LatencyTracer;
+import frc.robot.util.profiling.LoopProfiler;
+import frc.robot.util.telemetry.PublishRate;
 
 public class ArmSubsystem extends SubsystemBase {
 
@@ -21,6 +30,10 @@ public class ArmSubsystem extends SubsystemBase {
     public static final double ENCODER_OFFSET = 0;
     public static final double DEGREES_PER_ROTATION = 360.0 * (1.0 / (75.0 / (24.0 / 64.0)));
     public static final double ERROR_TOLERANCE = 2.0;
+    // how long after zeroing the encoders before we trust their position again
+    public static final long RESET_SETTLE_MICROS = 50_000;
+    // how long without a new position frame before we decide the arm has stopped
+    public static final long STOPPED_MICROS = 2_000L * SparkMaxFrameProfile.POSITION_LEADER.getPeriod(2);
 
     // Safety limits
     public static final double MIN_ANGLE = 0.0;
@@ -33,24 +46,52 @@ public class ArmSubsystem extends SubsystemBase {
     public static final double kG = 0.42;
     public static final double kV = 0.0;
 
+    // Where the sensor values are recorded for replay (see replaySensors)
+    public static final String INPUTS_LOG = "ArmSubsystem/Inputs";
+
+    // Slots in the sensor snapshot
+    private static final int AMPS = 0;
+    private static final int ROTATIONS = 1;
+    private static final int VELOCITY = 2;
+    private static final int ABSOLUTE_POSITION = 3;
+    private static final int ESTIMATED_VELOCITY = 4;
+
     private final CANSparkMax leadMotor;
     private final CANSparkMax followMotor;
     private final SparkPIDController leadPid;
+    private final MotorOutputGateway leadOutput;
+    private final MotorOutputGateway followOutput;
     private final RelativeEncoder leadEncoder;
     private final RelativeEncoder followEncoder;
     private final DutyCycleEncoder leadThroughboreEncoder;
+    private final LoopProfiler.Section periodicTimer;
+    private final LatencyTracer.Path sampleToOutput;
+    private final LatencyTracer.Path inputToOutput;
+    private final SensorSnapshot sensors;
+    private final EventLog inputs;
+    private final double [] sensorValues;
+    private boolean sampledInBackground;
+    private double lastSampleRotations;
+    private double lastSampleVelocity;
+    private long lastSampleTime;
     private ArmFeedforward feedforward;
     private double currentAmps;
     private double currentDegrees;
     private double currentVelocity;
     private double currentRotations;
+    private double estimatedVelocity;
+    private double absolutePosition;
     private boolean brakeEnabled;
-    private boolean initialized = false;
+    private volatile boolean initialized = false;
+    private long settleUntil;
+    private boolean leaderFramesOk;
+    private boolean followerFramesOk;
     private double targetDegrees;
     private double targetVelocity;
     private double targetOutput;
     private double lastFeedforward;
     private String isLimited;
+    private long inputTimestamp;
 
     public ArmSubsystem(int leadMotorId, int followMotorId) {
 
@@ -66,11 +107,24 @@ public class ArmSubsystem extends SubsystemBase {
         followMotor.setSmartCurrentLimit(MAX_AMPS);
         followMotor.follow(leadMotor, INVERT_FOLLOWER);
 
+        leaderFramesOk = SparkMaxFrameProfile.POSITION_LEADER.apply(leadMotor, "ArmSubsystem/Leader");
+        followerFramesOk = SparkMaxFrameProfile.FOLLOWER.apply(followMotor, "ArmSubsystem/Follower");
+
         leadEncoder = leadMotor.getEncoder();
         followEncoder = followMotor.getEncoder();
 
         leadThroughboreEncoder = new DutyCycleEncoder(1);
 
+        periodicTimer = LoopProfiler.section("ArmSubsystem.periodic");
+        sampleToOutput = LatencyTracer.path("ArmSubsystem/SampleToOutput");
+        inputToOutput = LatencyTracer.path("ArmSubsystem/InputToOutput");
+
+        sensors = new SensorSnapshot(5);
+        sensorValues = new double[5];
+        inputs = new EventLog(INPUTS_LOG, "sampled", "amps", "rotations", "velocity", "absolutePosition", "estimatedVelocity");
+        sampledInBackground = false;
+        lastSampleRotations = Double.NaN;
+
         isLimited = "";
 
         leadPid = leadMotor.getPIDController();
@@ -78,26 +132,103 @@ public class ArmSubsystem extends SubsystemBase {
         leadPid.setI(0.0);
         leadPid.setD(0.0);
 
+        leadOutput = new MotorOutputGateway(leadMotor);
+        followOutput = new MotorOutputGateway(followMotor);
+
         feedforward = new ArmFeedforward(0.0, kG, kV);
         setTargetOutput(0.0);
         setBrakeEnabled(true);
 
         SmarterDashboard.putData("ArmSubsystem", builder -> {
-            builder.addDouble("AbsolutePosition", leadThroughboreEncoder::getAbsolutePosition);
-            builder.addString("AtLimit?", () -> isLimited);
-            builder.addBoolean("BrakeEnabled?", () -> brakeEnabled, this::setBrakeEnabled);
-            builder.addDouble("CurrentAmps", () -> currentAmps);
-            builder.addDouble("CurrentDegrees", () -> currentDegrees);
-            builder.addDouble("CurrentVelocity", () -> currentVelocity);
-            builder.addDouble("CurrentRotations", () -> currentRotations);
-            builder.addBoolean("Initialized??", () -> initialized);
-            builder.addDouble("LastFeedforward", () -> lastFeedforward);
-            builder.addDouble("TargetDegrees", () -> targetDegrees);
-            builder.addDouble("TargetVelocity", () -> targetVelocity);
-            builder.addDouble("TargetOutput", () -> targetOutput);
+            builder.addDouble("AbsolutePosition", () -> absolutePosition).atRate(PublishRate.NORMAL);
+            builder.addString("AtLimit?", () -> isLimited).atRate(PublishRate.NORMAL);
+            builder.addBoolean("BrakeEnabled?", () -> brakeEnabled, this::setBrakeEnabled).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("CurrentAmps", () -> currentAmps).atRate(PublishRate.FAST);
+            builder.addDouble("CurrentDegrees", () -> currentDegrees).atRate(PublishRate.FAST);
+            builder.addDouble("CurrentVelocity", () -> currentVelocity).atRate(PublishRate.FAST);
+            builder.addDouble("CurrentRotations", () -> currentRotations).atRate(PublishRate.FAST);
+            builder.addDouble("EstimatedVelocity", () -> estimatedVelocity).atRate(PublishRate.FAST);
+            builder.addBoolean("Initialized??", () -> initialized).atRate(PublishRate.SLOW);
+            builder.addBoolean("StatusFramesOk?", () -> leaderFramesOk && followerFramesOk).atRate(PublishRate.SLOW);
+            builder.addDouble("LastFeedforward", () -> lastFeedforward).atRate(PublishRate.FAST);
+            builder.addDouble("TargetDegrees", () -> targetDegrees).atRate(PublishRate.NORMAL);
+            builder.addDouble("TargetVelocity", () -> targetVelocity).atRate(PublishRate.NORMAL);
+            builder.addDouble("TargetOutput", () -> targetOutput).atRate(PublishRate.NORMAL);
         });
     }
 
+    /**
+     * Moves the CAN reads for this subsystem onto the supplied sampler's
+     * thread; periodic() will use the most recent snapshot instead
+     */
+    public void useSampler(SensorSampler sampler) {
+        sampledInBackground = true;
+        sampler.addSource(this::sampleSensors);
+    }
+
+    /**
+     * Replaces the hardware with recorded sensor values (in the order they're
+     * logged to {@link #INPUTS_LOG}, starting at the supplied offset);
+     * periodic() will use these until the next call
+     */
+    public void replaySensors(long timestampMicros, double [] values, int offset) {
+        sampledInBackground = true;
+        sensors.beginWrite(timestampMicros);
+        for (int i=0; i<sensors.size(); i++) {
+            sensors.set(i, values[offset + i]);
+        }
+        sensors.endWrite();
+    }
+
+    // Reads the sensors and publishes them as a snapshot. This runs on the
+    // sampler thread if we have one, otherwise at the start of periodic().
+    // Position is sampled more often than the loop runs, so we also estimate
+    // velocity (degrees per second) from the change in position between
+    // status frames, which reacts faster than the heavily filtered velocity
+    // reported by the SparkMax.
+    //
+    // The encoders are zeroed against the absolute encoder on the first
+    // sample. That happens here rather than in periodic() so that only one
+    // thread ever touches the position; and since the SparkMax only reports
+    // the new position in a later status frame, we don't estimate velocity
+    // from the positions it reports in the meantime.
+    private void sampleSensors(long timestamp) {
+        if (!initialized) {
+            leadEncoder.setPosition(getAbsolutePosition());
+            followEncoder.setPosition(getAbsolutePosition());
+            lastSampleRotations = Double.NaN;
+            lastSampleVelocity = 0.0;
+            settleUntil = timestamp + RESET_SETTLE_MICROS;
+            initialized = true;
+        }
+
+        // The position only changes when a new status frame arrives, which is
+        // slower than we sample; differencing every sample would alternate
+        // between 0 and twice the real speed. So we only difference across
+        // new frames, and only call it stopped once we've gone a couple of
+        // frame periods without one.
+        double rotations = leadEncoder.getPosition();
+        if (timestamp >= settleUntil) {
+            if (!Double.isFinite(lastSampleRotations)) {
+                lastSampleRotations = rotations;
+                lastSampleTime = timestamp;
+            } else if (timestamp > lastSampleTime
+                    && (rotations != lastSampleRotations || timestamp - lastSampleTime >= STOPPED_MICROS)) {
+                lastSampleVelocity = (rotations - lastSampleRotations) * DEGREES_PER_ROTATION / ((timestamp - lastSampleTime) / 1e6);
+                lastSampleRotations = rotations;
+                lastSampleTime = timestamp;
+            }
+        }
+
+        sensors.beginWrite(timestamp);
+        sensors.set(AMPS, leadMotor.getOutputCurrent());
+        sensors.set(ROTATIONS, rotations);
+        sensors.set(VELOCITY, leadEncoder.getVelocity());
+        sensors.set(ABSOLUTE_POSITION, leadThroughboreEncoder.getAbsolutePosition());
+        sensors.set(ESTIMATED_VELOCITY, lastSampleVelocity);
+        sensors.endWrite();
+    }
+
     private double getAbsolutePosition() {
         double initPos = leadThroughboreEncoder.getAbsolutePosition() - ENCODER_OFFSET;
         if (initPos > 0.5) {
@@ -142,10 +273,8 @@ public class ArmSubsystem extends SubsystemBase {
 
     public void setBrakeEnabled(boolean newValue) {
         brakeEnabled = newValue;
-        leadMotor.setIdleMode(newValue ? CANSparkBase.IdleMode.kBrake : CANSparkBase.IdleMode.kCoast);
-        if (followMotor != null) {
-            followMotor.setIdleMode(newValue ? CANSparkBase.IdleMode.kBrake : CANSparkBase.IdleMode.kCoast);
-        }
+        leadOutput.setIdleMode(newValue ? CANSparkBase.IdleMode.kBrake : CANSparkBase.IdleMode.kCoast);
+        followOutput.setIdleMode(newValue ? CANSparkBase.IdleMode.kBrake : CANSparkBase.IdleMode.kCoast);
     }
 
     public void setTargetDegrees(double degrees) {
@@ -156,12 +285,23 @@ public class ArmSubsystem extends SubsystemBase {
         targetDegrees = MathUtil.clamp(degrees, -MIN_ANGLE, MAX_ANGLE);
         targetVelocity = velocity;
         targetOutput = Double.NaN;
+        inputTimestamp = 0L;
     }
 
     public void setTargetOutput(double output) {
         targetDegrees = Double.NaN;
         targetVelocity = Double.NaN;
         targetOutput = MathUtil.clamp(output, -1.0, 1.0);
+        inputTimestamp = 0L;
+    }
+
+    /**
+     * Tells the arm when the input behind its current target was read (FPGA
+     * micros), so we can trace how old it is by the time it reaches the motor;
+     * call this after setting the target, since setting one clears it
+     */
+    public void markInput(long timestampMicros) {
+        inputTimestamp = timestampMicros;
     }
 
     public boolean isAtSetpoint() {
@@ -175,17 +315,31 @@ public class ArmSubsystem extends SubsystemBase {
     @Override
     public void periodic() {
 
-        if (!initialized) {
-            leadEncoder.setPosition(getAbsolutePosition());
-            followEncoder.setPosition(getAbsolutePosition());
-            initialized = true;
+        long start = periodicTimer.start();
+
+        // a controller that browned out is back on the default frame periods
+        leaderFramesOk = SparkMaxFrameProfile.POSITION_LEADER.reapplyIfReset(leadMotor, "ArmSubsystem/Leader", leaderFramesOk);
+        followerFramesOk = SparkMaxFrameProfile.FOLLOWER.reapplyIfReset(followMotor, "ArmSubsystem/Follower", followerFramesOk);
+
+        if (!sampledInBackground) {
+            sampleSensors(RobotController.getFPGATime());
         }
+        long sampled = sensors.read(sensorValues);
+        inputs.begin().add(sampled);
+        for (int i=0; i<sensorValues.length; i++) {
+            inputs.add(sensorValues[i]);
+        }
+        inputs.end();
 
-        currentAmps = leadMotor.getOutputCurrent();
-        currentRotations = leadEncoder.getPosition();
-        currentVelocity = leadEncoder.getVelocity() * DEGREES_PER_ROTATION;
+        currentAmps = sensorValues[AMPS];
+        currentRotations = sensorValues[ROTATIONS];
+        // the SparkMax reports RPM; everything here is in degrees per second
+        currentVelocity = sensorValues[VELOCITY] * DEGREES_PER_ROTATION / 60.0;
         currentDegrees = currentRotations * DEGREES_PER_ROTATION;
+        estimatedVelocity = sensorValues[ESTIMATED_VELOCITY];
+        absolutePosition = sensorValues[ABSOLUTE_POSITION];
         isLimited = "";
+        boolean sent;
 
         // In open-loop mode, we have to make sure we stop the motors when
         // we've exceeded the angle limits
@@ -198,7 +352,7 @@ public class ArmSubsystem extends SubsystemBase {
                 targetOutput = 0.0;
                 isLimited = "MAX";
             }
-            leadMotor.set(targetOutput);
+            sent = leadOutput.set(targetOutput);
         }
 
         // In open-loop mode, we have to calculate feedforward (notice that
@@ -206,9 +360,18 @@ public class ArmSubsystem extends SubsystemBase {
         // then apply the target position to the motors.
         else {
             lastFeedforward = feedforward.calculate(Units.degreesToRadians(currentDegrees), targetVelocity);
-            leadPid.setReference(
+            sent = leadOutput.setReference(
                     targetDegrees / DEGREES_PER_ROTATION,
                     CANSparkBase.ControlType.kPosition, 0, lastFeedforward);
         }
+
+        // suppressed and deferred writes never reached the motor, so they
+        // don't count as acting on anything
+        if (sent) {
+            sampleToOutput.record(sampled);
+            inputToOutput.record(inputTimestamp);
+        }
+
+        periodicTimer.stop(start);
     }
 }
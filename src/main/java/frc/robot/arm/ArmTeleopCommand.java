@@ -1,8 +1,10 @@
 package frc.robot.arm;
 
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
 
 import java.util.function.DoubleSupplier;
 
@@ -30,8 +32,8 @@ public class ArmTeleopCommand extends Command {
         addRequirements(arm);
 
         SmarterDashboard.putData("ArmTeleopCommand", builder -> {
-            builder.addDouble("LastHoldDegrees", () -> lastHoldDegrees);
-            builder.addDouble("LastOutput", () -> lastOutput);
+            builder.addDouble("LastHoldDegrees", () -> lastHoldDegrees).atRate(PublishRate.NORMAL);
+            builder.addDouble("LastOutput", () -> lastOutput).atRate(PublishRate.NORMAL);
         });
     }
 
@@ -44,6 +46,7 @@ public class ArmTeleopCommand extends Command {
     public void execute() {
 
         // Get the input power percentage, apply a deadband and clamp to [-1.0, 1.0]
+        long inputTimestamp = RobotController.getFPGATime();
         lastOutput = percent.getAsDouble();
         lastOutput = MathUtil.applyDeadband(lastOutput, DEADBAND);
         lastOutput = MathUtil.clamp(lastOutput, -1.0, 1.0);
@@ -65,6 +68,7 @@ public class ArmTeleopCommand extends Command {
             lastHoldDegrees = Double.NaN;
             arm.setTargetOutput(lastOutput);
         }
+        arm.markInput(inputTimestamp);
     }
 
     @Override
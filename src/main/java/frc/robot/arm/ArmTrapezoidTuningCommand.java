@@ -6,6 +6,7 @@ import edu.wpi.first.math.trajectory.TrapezoidProfile.State;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
 
 public class ArmTrapezoidTuningCommand extends Command {
 
@@ -35,12 +36,13 @@ public class ArmTrapezoidTuningCommand extends Command {
         addRequirements(arm);
 
         SmarterDashboard.putData("ArmTrapezoidTuningCommand", builder -> {
-            builder.addBoolean("Enabled?", () -> isEnabled, this::setEnabled);
-            builder.addDouble("MaxVelocity", () -> maxVelocity, this::setMaxVelocity);
-            builder.addDouble("MaxAcceleration", () -> maxAcceleration, this::setMaxAcceleration);
-            builder.addDouble("SetpointDegrees", () -> targetState.position, this::setTargetDegrees);
-            builder.addDouble("NextDegrees", () -> nextState == null ? Double.NaN : nextState.position);
-            builder.addDouble("NextVelocity", () -> nextState == null ? Double.NaN : nextState.velocity);
+            builder.addBoolean("Enabled?", () -> isEnabled, this::setEnabled).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("MaxVelocity", () -> maxVelocity, this::setMaxVelocity).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("MaxAcceleration", () -> maxAcceleration, this::setMaxAcceleration).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("SetpointDegrees", () -> targetState.position, this::setTargetDegrees).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("NextDegrees", () -> nextState == null ? Double.NaN : nextState.position).atRate(PublishRate.FAST);
+            builder.addDouble("NextVelocity", () -> nextState == null ? Double.NaN : nextState.velocity).atRate(PublishRate.FAST);
+            builder.addState("NextState", () -> nextState).atRate(PublishRate.FAST);
         });
     }
 
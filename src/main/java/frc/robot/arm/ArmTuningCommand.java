@@ -4,6 +4,7 @@ import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
 
 public class ArmTuningCommand extends Command {
 
@@ -25,13 +26,13 @@ public class ArmTuningCommand extends Command {
         addRequirements(arm);
 
         SmarterDashboard.putData("ArmTuningCommand", builder -> {
-            builder.addBoolean("Enabled?", () -> enabled, this::setEnabled);
-            builder.addDouble("kP", arm::getP, arm::setP);
-            builder.addDouble("kG", arm::getG, arm::setG);
-            builder.addDouble("kV", arm::getV, arm::setV);
-            builder.addDouble("SetpointDegrees", () -> setpointDegrees, this::setSetpointDegrees);
-            builder.addDouble("SetpointVelocity", () -> setpointVelocity, val -> setpointVelocity = val);
-            builder.addDouble("TargetDegrees", () -> targetDegrees);
+            builder.addBoolean("Enabled?", () -> enabled, this::setEnabled).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("kP", arm::getP, arm::setP).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("kG", arm::getG, arm::setG).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("kV", arm::getV, arm::setV).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("SetpointDegrees", () -> setpointDegrees, this::setSetpointDegrees).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("SetpointVelocity", () -> setpointVelocity, val -> setpointVelocity = val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("TargetDegrees", () -> targetDegrees).atRate(PublishRate.NORMAL);
         });
     }
 
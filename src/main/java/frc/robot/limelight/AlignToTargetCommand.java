@@ -1,16 +1,27 @@
 package frc.robot.limelight;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.swerve.LatencyCompensatedPoseEstimator;
+import frc.robot.swerve.PoseHistory;
 import frc.robot.swerve.SwerveDriveSubsystem;
 import frc.robot.swerve.DriveAtFixedSpeedCommand;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.profiling.LatencyTracer;
+import frc.robot.util.telemetry.PublishRate;
 
 /**
  * Uses the {@link LimelightSubsystem} to get target information and the {@link SwerveDriveSubsystem}
  * to spin the robot until the target is within a certain range of the center of the field of view.
  *
+ * Rather than steering on the last tx we saw (which is stale between frames,
+ * and by the camera's latency even when it's new), we steer on the bearing
+ * predicted by a {@link TargetTracker}, which follows our own yaw rate
+ * between frames.
+ *
  * Combine this with a {@link DriveAtFixedSpeedCommand} to implement a
  * behavior of orienting on a target and then driving towards it.
  */
@@ -24,6 +35,9 @@ public class AlignToTargetCommand extends Command {
     private final LimelightSubsystem limelight;
     private final SwerveDriveSubsystem drive;
     private final TargetInfo target;
+    private final TargetTracker tracker;
+    private final double [] captured;
+    private final LatencyTracer.Path captureToDrive;
     private final ChassisSpeeds speeds;
     private final SendableChooser<LimelightPipeline> pipeline;
     private double speedFactor;
@@ -40,6 +54,9 @@ public class AlignToTargetCommand extends Command {
         this.tolerance = DEFAULT_TARGETING_TOLERANCE;
         this.pipeline = LimelightPipeline.makeChooser();
         this.target = new TargetInfo();
+        this.tracker = new TargetTracker();
+        this.captured = new double[3];
+        this.captureToDrive = LatencyTracer.path("AlignToTargetCommand/CaptureToDrive");
         this.speeds = new ChassisSpeeds();
         this.done = false;
 
@@ -47,13 +64,18 @@ public class AlignToTargetCommand extends Command {
 
         SmarterDashboard.putChooser("AlignToTargetCommand/Pipeline", pipeline);
         SmarterDashboard.putData("AlignToTargetCommand", builder -> {
-            builder.addBoolean("Done?", () -> done);
-            builder.displayAsDegrees("Tuning/MaxSpeed", () -> maxSpeed, val -> maxSpeed = val);
-            builder.addDouble("Tuning/SpeedFactor", () -> speedFactor, val -> speedFactor = val);
-            builder.addDouble("Tuning/Tolerance", () -> tolerance, val -> tolerance = val);
-            builder.addBoolean("Output/HasTarget?", () -> target.hasTarget);
-            builder.addDouble("Output/HorizontalOffset", () -> target.horizontalOffset);
-            builder.displayAsDegrees("Output/Speed", () -> speeds.omegaRadiansPerSecond);
+            builder.addBoolean("Done?", () -> done).atRate(PublishRate.NORMAL);
+            builder.addBoolean("PipelineReady?", limelight::isPipelineReady).atRate(PublishRate.NORMAL);
+            builder.displayAsDegrees("Tuning/MaxSpeed", () -> maxSpeed, val -> maxSpeed = val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("Tuning/SpeedFactor", () -> speedFactor, val -> speedFactor = val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("Tuning/Tolerance", () -> tolerance, val -> tolerance = val).atRate(PublishRate.ON_CHANGE);
+            builder.addBoolean("Output/HasTarget?", () -> target.hasTarget).atRate(PublishRate.FAST);
+            builder.addDouble("Tuning/ProcessNoise", tracker::getProcessNoise, tracker::setProcessNoise).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("Tuning/MeasurementNoise", tracker::getMeasurementNoise, tracker::setMeasurementNoise).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("Output/HorizontalOffset", () -> target.horizontalOffset).atRate(PublishRate.FAST);
+            builder.addBoolean("Output/Tracking?", tracker::isTracking).atRate(PublishRate.FAST);
+            builder.addDouble("Output/PredictedBearing", tracker::getBearing).atRate(PublishRate.FAST);
+            builder.displayAsDegrees("Output/Speed", () -> speeds.omegaRadiansPerSecond).atRate(PublishRate.FAST);
         });
     }
 
@@ -61,25 +83,69 @@ public class AlignToTargetCommand extends Command {
     public void initialize() {
         limelight.setPipeline(pipeline.getSelected());
         target.setNoTarget();
+        tracker.reset();
         speeds.omegaRadiansPerSecond = 0.0;
         done = false;
     }
 
     @Override
     public void execute() {
+        // until the camera has switched to our pipeline, "no target" doesn't
+        // mean anything, so we stop and wait (the drive would otherwise keep
+        // whatever speeds the previous command left it with)
+        if (!limelight.isPipelineReady()) {
+            speeds.omegaRadiansPerSecond = 0.0;
+            drive.driveRobotRelative(speeds);
+            return;
+        }
+
+        double now = Timer.getFPGATimestamp();
+        tracker.predict(now, drive.getSpeeds().omegaRadiansPerSecond);
+
         limelight.updateTargetInfo(target);
-        if (target.hasTarget && Math.abs(target.horizontalOffset) > tolerance) {
-            speeds.omegaRadiansPerSecond = speedFactor * target.horizontalOffset;
+        if (target.hasTarget) {
+            tracker.correct(target.timestampSeconds, target.horizontalOffset, turnedSince(target.timestampSeconds));
+        }
+
+        // the drive keeps the last speeds it was given, so we always send
+        // something; turning counter-clockwise moves the target to the right
+        // (see TargetTracker), so we turn against the bearing to bring it back
+        // to the middle. Without a target we stop and wait for one.
+        if (!tracker.isTracking()) {
+            speeds.omegaRadiansPerSecond = 0.0;
+            drive.driveRobotRelative(speeds);
+        } else if (Math.abs(tracker.getBearing()) > tolerance) {
+            speeds.omegaRadiansPerSecond = MathUtil.clamp(
+                    -speedFactor * Math.toRadians(tracker.getBearing()), -maxSpeed, maxSpeed);
             drive.driveRobotRelative(speeds);
+            captureToDrive.recordSeconds(tracker.getLastMeasurementTimestamp());
         } else {
+            speeds.omegaRadiansPerSecond = 0.0;
+            drive.driveRobotRelative(speeds);
             done = true;
         }
     }
 
+    @Override
+    public boolean isFinished() {
+        return done;
+    }
+
+    // how far we've turned since the supplied time (0 if it's older than our history)
+    private double turnedSince(double timestampSeconds) {
+        LatencyCompensatedPoseEstimator estimator = drive.getPoseEstimator();
+        if (!estimator.getPoseAt(timestampSeconds, captured)) {
+            return 0.0;
+        }
+        return estimator.getTheta() - captured[PoseHistory.THETA];
+    }
+
     @Override
     public void end(boolean interrupted) {
         speeds.omegaRadiansPerSecond = 0.0;
+        drive.driveRobotRelative(speeds);
         target.setNoTarget();
+        tracker.reset();
         done = true;
     }
 }
@@ -2,63 +2,163 @@ package frc.robot.limelight;
 
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.swerve.PoseHistory;
 import frc.robot.swerve.SwerveDriveSubsystem;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.logging.EventLog;
+import frc.robot.util.profiling.LatencyTracer;
+import frc.robot.util.telemetry.PublishRate;
 
+/**
+ * Feeds every new pose estimate from a {@link LimelightFleet} through a
+ * {@link VisionMeasurementFilter} and into the drive's pose estimator, in
+ * capture order across all cameras.
+ *
+ * In single-tag mode, we instead solve for a pose from each tag each camera
+ * sees (cameras without a {@link CameraMount} are skipped), so each tag is
+ * filtered and weighted on its own.
+ *
+ * Both of those depend on our heading, which we don't know at startup (or
+ * once odometry has lost track). Until the filter has been seeded, we look at
+ * each camera's MegaTag1 estimate instead, which solves for heading from the
+ * tags alone, and take the first good one as our pose outright.
+ */
 public class AprilTagPoseEstimateCommand extends Command {
 
-    private final LimelightSubsystem limelight;
+    private final LimelightFleet cameras;
     private final SwerveDriveSubsystem drive;
     private final SendableChooser<LimelightPipeline> pipeline;
-    private PoseEstimate lastPose;
-    public boolean log;
+    private final EventLog frames;
+    private final VisionMeasurementFilter filter;
+    private final PoseEstimate lastEstimate;
+    private final RawFiducials fiducials;
+    private final SingleTagSolver solver;
+    private final PoseEstimate tagEstimate;
+    private final PoseEstimate seedEstimate;
+    private final double [] captured;
+    private final LatencyTracer.Path captureToFusion;
+    private final LatencyTracer.Path tagCaptureToFusion;
+    private boolean singleTag;
+    private long tagsSolved;
+    private boolean hasPose;
 
 
-    public AprilTagPoseEstimateCommand(LimelightSubsystem limelight, SwerveDriveSubsystem drive) {
+    public AprilTagPoseEstimateCommand(LimelightFleet cameras, SwerveDriveSubsystem drive) {
 
-        this.limelight = limelight;
+        this.cameras = cameras;
         this.drive = drive;
         this.pipeline = LimelightPipeline.makeChooser();
-        this.lastPose = null;
+        this.lastEstimate = new PoseEstimate();
+        this.fiducials = new RawFiducials();
+        this.solver = new SingleTagSolver();
+        this.tagEstimate = new PoseEstimate();
+        this.seedEstimate = new PoseEstimate();
+        this.captured = new double[3];
+        this.singleTag = false;
+        this.captureToFusion = LatencyTracer.path("AprilTagPoseEstimateCommand/CaptureToFusion");
+        this.tagCaptureToFusion = LatencyTracer.path("AprilTagPoseEstimateCommand/TagCaptureToFusion");
+        this.hasPose = false;
+        this.filter = new VisionMeasurementFilter(drive);
+        this.frames = new EventLog("AprilTagPoseEstimateCommand/Frames",
+                "camera", "timestamp", "latencyMs", "tagCount", "tagSpan", "averageTagDistance", "averageTagArea");
 
         SmarterDashboard.putChooser("AprilTagPoseEstimateCommand/Pipeline", pipeline);
         SmarterDashboard.putData("AprilTagPoseEstimateCommand", builder -> {
-            builder.addBoolean("HasPose?", () -> lastPose != null);
-            builder.addPose("LastPose", () -> lastPose == null ? null : lastPose.pose);
-            builder.addBoolean("Log?", () -> log, val -> log = val);
+            builder.addBoolean("HasPose?", () -> hasPose).atRate(PublishRate.NORMAL);
+            builder.addBoolean("PipelineReady?", cameras::isPipelineReady).atRate(PublishRate.NORMAL);
+            builder.addPose("LastPose", () -> hasPose ? lastEstimate.getPose() : null).atRate(PublishRate.NORMAL);
+            builder.addStruct("LastEstimate", PoseEstimate.struct, () -> hasPose ? lastEstimate : null).atRate(PublishRate.FAST);
+            builder.addBoolean("Log?", frames::isEcho, frames::setEcho).atRate(PublishRate.ON_CHANGE);
+            builder.addBoolean("SingleTag?", () -> singleTag, val -> singleTag = val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("MaxAmbiguity", solver::getMaxAmbiguity, solver::setMaxAmbiguity).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("TagsSolved", () -> tagsSolved).atRate(PublishRate.SLOW);
         });
+
+        addRequirements(cameras);
     }
 
     @Override
     public void initialize() {
-        lastPose = null;
-        limelight.setPipeline(pipeline.getSelected());
+        hasPose = false;
+        cameras.setPipeline(pipeline.getSelected());
     }
 
     @Override
     public void execute() {
 
-        lastPose = limelight.getPoseEstimate();
-        if (lastPose == null) {
-            return;
+        seed();
+
+        // if no camera has produced a new frame since last loop, there's
+        // nothing to do (and we keep showing the previous estimate)
+        int count = cameras.collect();
+        for (int i=0; i<count; i++) {
+
+            PoseEstimate estimate = cameras.getEstimate(i);
+            frames.begin()
+                    .add(cameras.getSourceIndex(i))
+                    .add(estimate.timestampSeconds)
+                    .add(estimate.latency)
+                    .add(estimate.tagCount)
+                    .add(estimate.tagSpan)
+                    .add(estimate.averageTagDistance)
+                    .add(estimate.averageTagArea)
+                    .end();
+
+            if (!singleTag && filter.test(estimate)) {
+                drive.acceptPoseEstimate(estimate, filter.getTranslationStdDev(), filter.getRotationStdDev());
+                captureToFusion.recordSeconds(estimate.timestampSeconds);
+            }
+        }
+
+        if (count > 0) {
+            lastEstimate.copyFrom(cameras.getEstimate(count - 1));
+            hasPose = true;
+        }
+
+        if (singleTag) {
+            for (int i=0; i<cameras.getCameraCount(); i++) {
+                solveTags(cameras.getCamera(i));
+            }
         }
+    }
 
-        if (log) {
-            System.out.printf("Pose Estimate Information:%n");
-            System.out.printf("Timestamp (Seconds): %.3f%n", lastPose.timestampSeconds);
-            System.out.printf("Latency: %.3f ms%n", lastPose.latency);
-            System.out.printf("Tag Count: %d%n", lastPose.tagCount);
-            System.out.printf("Tag Span: %.2f meters%n", lastPose.tagSpan);
-            System.out.printf("Average Tag Distance: %.2f meters%n", lastPose.averageTagDistance);
-            System.out.printf("Average Tag Area: %.2f%% of image%n", lastPose.averageTagArea);
-            System.out.println();
+    private void solveTags(LimelightSubsystem camera) {
+        CameraMount mount = camera.getMount();
+        if (mount == null || !camera.getFiducials(fiducials)) {
+            return;
+        }
+        if (!drive.getPoseEstimator().getPoseAt(fiducials.timestampSeconds, captured)) {
+            return;
+        }
+        double heading = captured[PoseHistory.THETA];
+        for (int i=0; i<fiducials.count; i++) {
+            if (solver.solve(mount, fiducials, i, heading, tagEstimate)) {
+                tagsSolved++;
+                if (filter.test(tagEstimate)) {
+                    drive.acceptPoseEstimate(tagEstimate, filter.getTranslationStdDev(), filter.getRotationStdDev());
+                    tagCaptureToFusion.recordSeconds(tagEstimate.timestampSeconds);
+                }
+            }
         }
+    }
 
-        drive.acceptPoseEstimate(lastPose);
+    // while odometry has no idea where we are, the first good MegaTag1
+    // estimate (heading included) is taken as our pose rather than blended
+    // in; we take every camera's latest frame each loop either way, so we
+    // never seed from a stale one later
+    private void seed() {
+        for (int i=0; i<cameras.getCameraCount(); i++) {
+            if (cameras.getCamera(i).getMegaTag1Estimate(seedEstimate)
+                    && filter.needsSeed()
+                    && filter.testSeed(seedEstimate)) {
+                drive.getPoseEstimator().seedPose(seedEstimate.timestampSeconds,
+                        seedEstimate.x, seedEstimate.y, Math.toRadians(seedEstimate.yawDegrees));
+            }
+        }
     }
 
     @Override
     public void end(boolean interrupted) {
-        lastPose = null;
+        hasPose = false;
     }
 }
@@ -0,0 +1,23 @@
+package frc.robot.limelight;
+
+/**
+ * Where a camera sits on the robot: offsets from the robot's center (meters,
+ * forward and left positive) and its height off the floor, and which way it
+ * points (radians - yaw counter-clockwise from the robot's front, pitch up).
+ */
+public class CameraMount {
+
+    public final double forward;
+    public final double left;
+    public final double height;
+    public final double yaw;
+    public final double pitch;
+
+    public CameraMount(double forward, double left, double height, double yaw, double pitch) {
+        this.forward = forward;
+        this.left = left;
+        this.height = height;
+        this.yaw = yaw;
+        this.pitch = pitch;
+    }
+}
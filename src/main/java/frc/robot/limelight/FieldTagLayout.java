@@ -0,0 +1,75 @@
+package frc.robot.limelight;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * The AprilTag field layout, flattened into arrays indexed by tag ID so that
+ * looking up a tag during the loop is just an array read. Loading the layout
+ * parses a JSON resource, so call {@link #load()} during robotInit rather
+ * than letting the first lookup do it mid-match.
+ */
+public class FieldTagLayout {
+
+    public static final AprilTagFields FIELD = AprilTagFields.k2024Crescendo;
+    public static final int MAX_ID = 32;
+
+    private static final boolean [] present = new boolean[MAX_ID + 1];
+    private static final double [] xs = new double[MAX_ID + 1];
+    private static final double [] ys = new double[MAX_ID + 1];
+    private static final double [] zs = new double[MAX_ID + 1];
+    private static final double [] yaws = new double[MAX_ID + 1];
+    private static boolean loaded = false;
+
+    private FieldTagLayout() {}
+
+    public static synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try {
+            AprilTagFieldLayout layout = FIELD.loadAprilTagLayoutField();
+            for (AprilTag tag : layout.getTags()) {
+                if (tag.ID < 0 || tag.ID > MAX_ID) {
+                    continue;
+                }
+                present[tag.ID] = true;
+                xs[tag.ID] = tag.pose.getX();
+                ys[tag.ID] = tag.pose.getY();
+                zs[tag.ID] = tag.pose.getZ();
+                yaws[tag.ID] = tag.pose.getRotation().getZ();
+            }
+        } catch (Exception e) {
+            DriverStation.reportError("FieldTagLayout: failed to load " + FIELD + ": " + e.getMessage(), false);
+        }
+    }
+
+    public static boolean hasTag(int id) {
+        if (!loaded) {
+            load();
+        }
+        return id >= 0 && id <= MAX_ID && present[id];
+    }
+
+    public static double getX(int id) {
+        return xs[id];
+    }
+
+    public static double getY(int id) {
+        return ys[id];
+    }
+
+    public static double getZ(int id) {
+        return zs[id];
+    }
+
+    /**
+     * @return the direction the tag faces, in radians
+     */
+    public static double getYaw(int id) {
+        return yaws[id];
+    }
+}
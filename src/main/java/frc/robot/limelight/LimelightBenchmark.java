@@ -0,0 +1,99 @@
+package frc.robot.limelight;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import frc.robot.util.profiling.LatencyHistogram;
+import frc.robot.util.profiling.LoopProfiler;
+
+/**
+ * Measures how well {@link LimelightSubsystem} keeps up with a camera, with
+ * no camera: a {@link SimulatedLimelight} drives a circle in front of the
+ * blue speaker tags and publishes as fast as we ask it to, while this class
+ * calls periodic() every 20ms like the robot loop would.
+ *
+ * Run it on a desktop with <code>./gradlew benchmarkLimelight</code>, which
+ * passes these (optional) arguments:
+ * <ol>
+ *     <li>seconds to run (default 10)</li>
+ *     <li>camera frames per second (default 100)</li>
+ *     <li>camera latency in ms (default 20)</li>
+ *     <li>latency jitter in ms (default 5)</li>
+ *     <li>fraction of frames dropped (default 0.05)</li>
+ * </ol>
+ */
+public class LimelightBenchmark {
+
+    public static final String TABLE = "limelight-bench";
+    public static final long LOOP_NANOS = 20_000_000L;
+
+    public static void main(String [] args) throws InterruptedException {
+
+        double seconds = arg(args, 0, 10.0);
+        double fps = arg(args, 1, 100.0);
+        double latency = arg(args, 2, 20.0);
+        double jitter = arg(args, 3, 5.0);
+        double dropout = arg(args, 4, 0.05);
+
+        HAL.initialize(500, 0);
+        NetworkTableInstance instance = NetworkTableInstance.getDefault();
+        FieldTagLayout.load();
+
+        long start = System.nanoTime();
+        CameraMount mount = new CameraMount(0.30, 0.0, 0.25, 0.0, Math.toRadians(25.0));
+        LimelightSubsystem camera = new LimelightSubsystem(TABLE);
+        SimulatedLimelight simulated = new SimulatedLimelight(instance, TABLE, mount, () -> circle(start), 1L)
+                .withFrameRate(fps)
+                .withLatency(latency, jitter)
+                .withDropout(dropout);
+
+        System.out.printf("running for %.1fs: %.0f fps, %.1fms +/- %.1fms latency, %.0f%% dropout%n",
+                seconds, fps, latency, jitter, dropout * 100.0);
+
+        simulated.start();
+        long end = start + (long) (seconds * 1_000_000_000L);
+        long next = System.nanoTime();
+        long loops = 0;
+        while (System.nanoTime() < end) {
+            camera.periodic();
+            loops++;
+            next += LOOP_NANOS;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+            }
+        }
+        simulated.stop();
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        LatencyHistogram ingest = camera.getIngestLatency();
+        LatencyHistogram periodic = LoopProfiler.section("LimelightSubsystem-" + TABLE + ".periodic").getHistogram();
+
+        System.out.printf("loops:              %d%n", loops);
+        System.out.printf("frames published:   %d (%d dropped by the camera)%n", simulated.getPublished(), simulated.getDropped());
+        System.out.printf("frames ingested:    %d targeting, %d pose (%.1f/s)%n",
+                camera.getTargetFrames(), camera.getPoseFrames(), camera.getTargetFrames() / elapsed);
+        System.out.printf("queue overflows:    %d%n", camera.getDroppedFrames());
+        System.out.printf("ingest latency:     p50 %.2fms, p99 %.2fms, max %.2fms%n",
+                ingest.getPercentile(0.50) / 1000.0, ingest.getPercentile(0.99) / 1000.0, ingest.getMax() / 1000.0);
+        System.out.printf("periodic time:      p50 %.3fms, p99 %.3fms, max %.3fms%n",
+                periodic.getPercentile(0.50) / 1000.0, periodic.getPercentile(0.99) / 1000.0, periodic.getMax() / 1000.0);
+
+        System.exit(0);
+    }
+
+    // a slow circle two meters out from the blue speaker, facing it
+    private static Pose2d circle(long startNanos) {
+        double t = (System.nanoTime() - startNanos) / 1e9;
+        double angle = t * 0.5;
+        return new Pose2d(
+                2.5 + 0.75 * Math.cos(angle),
+                5.55 + 0.75 * Math.sin(angle),
+                Rotation2d.fromDegrees(180.0));
+    }
+
+    private static double arg(String [] args, int idx, double defaultValue) {
+        return args.length > idx ? Double.parseDouble(args[idx]) : defaultValue;
+    }
+}
@@ -0,0 +1,164 @@
+package frc.robot.limelight;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.swerve.SwerveDriveSubsystem;
+import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
+
+/**
+ * Coordinates several Limelights. Each camera ingests its own frames (see
+ * {@link LimelightSubsystem}); every loop, {@link #collect()} gathers the new
+ * pose estimates from all of them and orders them by capture time, so pose
+ * fusion sees one merged stream no matter which camera a frame came from.
+ *
+ * Commands that use the cameras should require the fleet rather than the
+ * individual cameras.
+ *
+ * If it has an orientation source, the fleet also sends our heading and yaw
+ * rate to every camera for MegaTag2. That happens in periodic(), so make
+ * sure the drive is created (and so has its periodic() run) before the fleet;
+ * that way the cameras get the heading as soon as it has been updated.
+ */
+public class LimelightFleet extends SubsystemBase {
+
+    private final LimelightSubsystem [] cameras;
+    private final PoseEstimate [] estimates;
+    private final int [] sources;
+    private final int [] order;
+    private final long [] framesByCamera;
+    private final RobotOrientationPublisher orientation;
+    private SwerveDriveSubsystem orientationSource;
+    private int count;
+    private long outOfOrder;
+    private double lastTimestamp;
+
+    public LimelightFleet(LimelightSubsystem... cameras) {
+
+        this.cameras = cameras;
+        this.estimates = new PoseEstimate[cameras.length];
+        this.sources = new int[cameras.length];
+        this.order = new int[cameras.length];
+        this.framesByCamera = new long[cameras.length];
+        String [] tableNames = new String[cameras.length];
+        for (int i=0; i<cameras.length; i++) {
+            estimates[i] = new PoseEstimate();
+            tableNames[i] = cameras[i].getTableName();
+        }
+        this.orientation = new RobotOrientationPublisher(tableNames);
+
+        SmarterDashboard.putData("LimelightFleet", builder -> {
+            builder.addDouble("EstimatesThisLoop", () -> count).atRate(PublishRate.NORMAL);
+            builder.addDouble("OutOfOrder", () -> outOfOrder).atRate(PublishRate.SLOW);
+            builder.addDouble("OrientationsSent", orientation::getPublished).atRate(PublishRate.SLOW);
+            for (int i=0; i<cameras.length; i++) {
+                final int idx = i;
+                builder.addDouble("Frames/" + cameras[i].getTableName(), () -> framesByCamera[idx]).atRate(PublishRate.SLOW);
+            }
+        });
+    }
+
+    public int getCameraCount() {
+        return cameras.length;
+    }
+
+    public LimelightSubsystem getCamera(int idx) {
+        return cameras[idx];
+    }
+
+    /**
+     * @param drive where to get our heading and yaw rate from (null to stop
+     * sending orientation)
+     */
+    public void setOrientationSource(SwerveDriveSubsystem drive) {
+        this.orientationSource = drive;
+    }
+
+    @Override
+    public void periodic() {
+        if (orientationSource != null) {
+            orientation.publish(
+                    Math.toDegrees(MathUtil.angleModulus(orientationSource.getPoseEstimator().getTheta())),
+                    Math.toDegrees(orientationSource.getSpeeds().omegaRadiansPerSecond));
+        }
+    }
+
+    public void setPipeline(LimelightPipeline pipeline) {
+        for (LimelightSubsystem camera : cameras) {
+            camera.setPipeline(pipeline);
+        }
+    }
+
+    /**
+     * @return true if every camera is running the requested pipeline
+     */
+    public boolean isPipelineReady() {
+        for (LimelightSubsystem camera : cameras) {
+            if (!camera.isPipelineReady()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gathers new estimates from every camera, oldest capture first
+     * @return the number of new estimates
+     */
+    public int collect() {
+        count = 0;
+        for (int i=0; i<cameras.length; i++) {
+            PoseEstimate estimate = estimates[count];
+            if (cameras[i].getPoseEstimate(estimate)) {
+                sources[count] = i;
+                order[count] = count;
+                framesByCamera[i]++;
+                count++;
+            }
+        }
+
+        // insertion sort - there are only ever a handful of cameras
+        for (int i=1; i<count; i++) {
+            int idx = order[i];
+            double timestamp = estimates[idx].timestampSeconds;
+            int j = i - 1;
+            while (j >= 0 && estimates[order[j]].timestampSeconds > timestamp) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = idx;
+        }
+
+        // a camera whose latency put its frame before one we already fused
+        // still gets applied (the estimator handles that), but we count it
+        if (count > 0) {
+            if (estimates[order[0]].timestampSeconds < lastTimestamp) {
+                outOfOrder++;
+            }
+            lastTimestamp = estimates[order[count - 1]].timestampSeconds;
+        }
+        return count;
+    }
+
+    /**
+     * @return the i-th estimate from the last {@link #collect()}, in
+     * capture order (reused from loop to loop)
+     */
+    public PoseEstimate getEstimate(int i) {
+        return estimates[order[i]];
+    }
+
+    /**
+     * @return the camera that produced the i-th estimate
+     */
+    public LimelightSubsystem getSource(int i) {
+        return cameras[sources[order[i]]];
+    }
+
+    /**
+     * @return the index of the camera that produced the i-th estimate
+     */
+    public int getSourceIndex(int i) {
+        return sources[order[i]];
+    }
+}
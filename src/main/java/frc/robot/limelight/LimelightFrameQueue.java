@@ -0,0 +1,161 @@
+package frc.robot.limelight;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated single-producer/single-consumer queue of Limelight frames. The
+ * NetworkTables listener thread copies each new array the camera publishes
+ * into the next slot; the robot thread drains the queue at the start of the
+ * loop. Neither side blocks or allocates - if the robot thread falls behind
+ * far enough to fill the queue, new frames are dropped and counted.
+ *
+ * Every frame is a kind (which topic it came from), the time it arrived
+ * (NetworkTables micros) and up to {@link #FRAME_VALUES} values copied from
+ * the published array, so all of a frame's fields come from the same update.
+ */
+public class LimelightFrameQueue {
+
+    // enough for the 11 botpose values plus 12 tags' worth of per-tag data
+    public static final int FRAME_VALUES = 96;
+
+    public static final int TARGET = 0;
+    public static final int POSE = 1;
+    public static final int FIDUCIALS = 2;
+    public static final int PIPELINE = 3;
+    public static final int MEGATAG1_POSE = 4;
+
+    private final int capacity;
+    private final int mask;
+    private final int [] kinds;
+    private final long [] timestamps;
+    private final int [] lengths;
+    private final double [] values;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final AtomicLong dropped;
+
+    /**
+     * @param capacity number of frames (rounded up to a power of two)
+     */
+    public LimelightFrameQueue(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.kinds = new int[this.capacity];
+        this.timestamps = new long[this.capacity];
+        this.lengths = new int[this.capacity];
+        this.values = new double[this.capacity * FRAME_VALUES];
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.dropped = new AtomicLong();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    // ---- producer side (listener thread only) ----
+
+    /**
+     * Copies a frame into the queue
+     * @return false if the queue was full and the frame was dropped
+     */
+    public boolean offer(int kind, long timestampMicros, double [] source) {
+        return offer(kind, timestampMicros, source, source.length);
+    }
+
+    /**
+     * Copies the first length values of a frame into the queue
+     * @return false if the queue was full and the frame was dropped
+     */
+    public boolean offer(int kind, long timestampMicros, double [] source, int length) {
+        long h = head.get();
+        if (h - tail.get() >= capacity) {
+            dropped.lazySet(dropped.get() + 1);
+            return false;
+        }
+        int slot = (int) (h & mask);
+        length = Math.min(length, FRAME_VALUES);
+        System.arraycopy(source, 0, values, slot * FRAME_VALUES, length);
+        kinds[slot] = kind;
+        timestamps[slot] = timestampMicros;
+        lengths[slot] = length;
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * Queues a single-value frame
+     * @return false if the queue was full and the frame was dropped
+     */
+    public boolean offer(int kind, long timestampMicros, double value) {
+        long h = head.get();
+        if (h - tail.get() >= capacity) {
+            dropped.lazySet(dropped.get() + 1);
+            return false;
+        }
+        int slot = (int) (h & mask);
+        values[slot * FRAME_VALUES] = value;
+        kinds[slot] = kind;
+        timestamps[slot] = timestampMicros;
+        lengths[slot] = 1;
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    // ---- consumer side (robot thread only) ----
+
+    /**
+     * @return the slot of the oldest frame, or -1 if the queue is empty
+     */
+    public int peek() {
+        long t = tail.get();
+        if (t == head.get()) {
+            return -1;
+        }
+        return (int) (t & mask);
+    }
+
+    public int kind(int slot) {
+        return kinds[slot];
+    }
+
+    public long timestamp(int slot) {
+        return timestamps[slot];
+    }
+
+    public int length(int slot) {
+        return lengths[slot];
+    }
+
+    /**
+     * @return the first value of a frame
+     */
+    public double value(int slot) {
+        return values[slot * FRAME_VALUES];
+    }
+
+    /**
+     * Copies a frame's values into the supplied array
+     * @return the number of values copied
+     */
+    public int copy(int slot, double [] out) {
+        int length = Math.min(lengths[slot], out.length);
+        System.arraycopy(values, slot * FRAME_VALUES, out, 0, length);
+        return length;
+    }
+
+    /**
+     * Hands the oldest frame's slot back to the producer
+     */
+    public void release() {
+        tail.lazySet(tail.get() + 1);
+    }
+}
@@ -1,77 +1,435 @@
 package frc.robot.limelight;
 
-import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.networktables.DoubleArrayEntry;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
 import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.DoubleSubscriber;
 import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
 import edu.wpi.first.networktables.NetworkTableInstance;
-import edu.wpi.first.networktables.TimestampedDoubleArray;
+import edu.wpi.first.networktables.NetworkTableValue;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.SmarterDashboard;
+import frc.robot.util.logging.EventLog;
+import frc.robot.util.profiling.LatencyHistogram;
+import frc.robot.util.profiling.LoopProfiler;
+import frc.robot.util.telemetry.PublishRate;
 
-import java.util.function.Supplier;
+import java.util.EnumSet;
 
+/**
+ * Rather than polling the Limelight's topics every loop (which reprocesses
+ * the same camera frame several times, and can read tv and tx from two
+ * different frames), we listen for new values of the arrays we care
+ * about and copy each one into a {@link LimelightFrameQueue} as it arrives.
+ * periodic() drains the queue, so by the time commands run they see the
+ * latest complete frame of each kind, exactly once.
+ *
+ * Targeting uses the "t2d" array, which carries tv/tx/ty/ta (and latencies)
+ * from a single frame. Pose estimates use "botpose_orb_wpiblue" (MegaTag2,
+ * which relies on the heading we send the camera); "botpose_wpiblue"
+ * (MegaTag1, which solves for heading from the tags alone) is also kept, for
+ * working out where we are before we know our heading. Per-tag observations
+ * come from "rawfiducials" (see {@link RawFiducials}).
+ *
+ * After a pipeline switch, frames keep coming from the old pipeline until the
+ * camera actually changes over. We track the pipeline the camera reports
+ * ("getpipe") and hold back everything - no target, no pose, no tags - until
+ * the first frame that arrives after the camera reports the pipeline we
+ * asked for. Consumers can check {@link #isPipelineReady()} to tell "no
+ * target" apart from "not ready yet".
+ *
+ * Each camera publishes to its own table (e.g. "limelight-front") and gets
+ * its own queue, so cameras never contend with each other; use a
+ * {@link LimelightFleet} to merge several of them (the fleet also sends
+ * them our orientation for MegaTag2).
+ *
+ * Every frame we take off the queue is also logged as it arrived, so a match
+ * can be replayed through this subsystem later (see {@link #startReplay()}).
+ */
 public class LimelightSubsystem extends SubsystemBase {
 
     public static final double [] NO_DATA = new double[0];
+    public static final String TABLE = "limelight";
+    public static final int QUEUE_CAPACITY = 32;
 
+    // indices into the t2d array
+    public static final int T2D_VALID = 0;
+    public static final int T2D_COUNT = 1;
+    public static final int T2D_PIPELINE_LATENCY = 2;
+    public static final int T2D_CAPTURE_LATENCY = 3;
+    public static final int T2D_TX = 4;
+    public static final int T2D_TY = 5;
+    public static final int T2D_TA = 8;
+    public static final int T2D_MIN_LENGTH = 9;
+
+    public static final int POSE_MIN_LENGTH = 6;
+
+    // recorded frames are logged as a header (kind, timestamp, length and
+    // offset) plus up to this many values per record
+    public static final int INPUT_CHUNK_VALUES = 12;
+
+    private static final String [] INPUT_FIELDS = {
+            "kind", "timestamp", "length", "offset",
+            "v0", "v1", "v2", "v3", "v4", "v5", "v6", "v7", "v8", "v9", "v10", "v11"
+    };
+
+    private final String tableName;
     private final DoubleEntry currentPipeline;
-    private final DoubleEntry horizontalOffset;
-    private final DoubleEntry verticalOffset;
-    private final DoubleEntry targetArea;
-    private final DoubleEntry targetCount;
-    private final DoubleArrayEntry megaTag;
-    private final Supplier<Pose2d> fieldPoseSupplier;
-    private final DoubleArrayEntry fieldPose;
-
-    public LimelightSubsystem(Supplier<Pose2d> poseSupplier) {
-        NetworkTable table = NetworkTableInstance.getDefault().getTable("limelight");
+    private final DoubleArraySubscriber targetSubscriber;
+    private final DoubleArraySubscriber poseSubscriber;
+    private final DoubleArraySubscriber megaTag1Subscriber;
+    private final DoubleArraySubscriber fiducialSubscriber;
+    private final DoubleSubscriber activePipelineSubscriber;
+    private final LoopProfiler.Section periodicTimer;
+    private final LimelightFrameQueue queue;
+    private final LatencyHistogram ingestLatency;
+    private final double [] target;
+    private final double [] pose;
+    private final double [] megaTag1Pose;
+    private final double [] scratch;
+    private final RawFiducials fiducials;
+    private final EventLog inputs;
+    private CameraMount mount;
+    private int poseLength;
+    private long targetTimestamp;
+    private long poseTimestamp;
+    private long consumedPoseTimestamp;
+    private int megaTag1Length;
+    private long megaTag1Timestamp;
+    private long consumedMegaTag1Timestamp;
+    private long fiducialTimestamp;
+    private long consumedFiducialTimestamp;
+    private long targetFrames;
+    private long poseFrames;
+    private long fiducialFrames;
+    private int requestedPipeline;
+    private int activePipeline;
+    private boolean pipelineReady;
+    private double switchTimestamp;
+    private double lastSwitchSeconds;
+    private long staleFrames;
+    private volatile boolean replaying;
+
+    public LimelightSubsystem() {
+        this(TABLE);
+    }
+
+    public LimelightSubsystem(String tableName) {
+        NetworkTableInstance instance = NetworkTableInstance.getDefault();
+        NetworkTable table = instance.getTable(tableName);
+        this.tableName = tableName;
         currentPipeline = table.getDoubleTopic("pipeline").getEntry(-1.0);
-        targetArea = table.getDoubleTopic("ta").getEntry(0.0);
-        horizontalOffset = table.getDoubleTopic("tx").getEntry(0.0);
-        verticalOffset = table.getDoubleTopic("ty").getEntry(0.0);
-        targetCount = table.getDoubleTopic("tv").getEntry(0.0);
-        megaTag = table.getDoubleArrayTopic("botpose_orb_wpiblue").getEntry(NO_DATA);
-        fieldPose = table.getDoubleArrayTopic("robot_orientation_set").getEntry(NO_DATA);
-        fieldPoseSupplier = poseSupplier;
+        targetSubscriber = table.getDoubleArrayTopic("t2d").subscribe(NO_DATA);
+        poseSubscriber = table.getDoubleArrayTopic("botpose_orb_wpiblue").subscribe(NO_DATA);
+        megaTag1Subscriber = table.getDoubleArrayTopic("botpose_wpiblue").subscribe(NO_DATA);
+        fiducialSubscriber = table.getDoubleArrayTopic("rawfiducials").subscribe(NO_DATA);
+        activePipelineSubscriber = table.getDoubleTopic("getpipe").subscribe(-1.0);
+        periodicTimer = LoopProfiler.section("LimelightSubsystem-" + tableName + ".periodic");
+
+        queue = new LimelightFrameQueue(QUEUE_CAPACITY);
+        ingestLatency = new LatencyHistogram(LoopProfiler.BUCKET_MICROS, LoopProfiler.BUCKET_COUNT);
+        target = new double[LimelightFrameQueue.FRAME_VALUES];
+        pose = new double[LimelightFrameQueue.FRAME_VALUES];
+        megaTag1Pose = new double[LimelightFrameQueue.FRAME_VALUES];
+        scratch = new double[LimelightFrameQueue.FRAME_VALUES];
+        fiducials = new RawFiducials();
+        inputs = new EventLog(getInputsLogName(tableName), INPUT_FIELDS);
+        requestedPipeline = LimelightPipeline.UNKNOWN.id;
+        activePipeline = LimelightPipeline.UNKNOWN.id;
+        pipelineReady = true;
+
+        instance.addListener(targetSubscriber,
+                EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+                event -> enqueue(LimelightFrameQueue.TARGET, event));
+        instance.addListener(poseSubscriber,
+                EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+                event -> enqueue(LimelightFrameQueue.POSE, event));
+        instance.addListener(megaTag1Subscriber,
+                EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+                event -> enqueue(LimelightFrameQueue.MEGATAG1_POSE, event));
+        instance.addListener(fiducialSubscriber,
+                EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+                event -> enqueue(LimelightFrameQueue.FIDUCIALS, event));
+        // NetworkTables won't re-send a value that hasn't changed, so if the
+        // camera published its pipeline before we got here we'd never hear
+        // it; kImmediate hands us the current value straight away
+        instance.addListener(activePipelineSubscriber,
+                EnumSet.of(NetworkTableEvent.Kind.kImmediate, NetworkTableEvent.Kind.kValueAll),
+                event -> {
+                    if (event.valueData != null && !replaying) {
+                        NetworkTableValue value = event.valueData.value;
+                        queue.offer(LimelightFrameQueue.PIPELINE, value.getTime(), value.getDouble());
+                    }
+                });
+
+        SmarterDashboard.putData("LimelightSubsystem-" + tableName, builder -> {
+            builder.addDouble("TargetFrames", () -> targetFrames).atRate(PublishRate.SLOW);
+            builder.addDouble("PoseFrames", () -> poseFrames).atRate(PublishRate.SLOW);
+            builder.addDouble("FiducialFrames", () -> fiducialFrames).atRate(PublishRate.SLOW);
+            builder.addDouble("StaleFrames", () -> staleFrames).atRate(PublishRate.SLOW);
+            builder.addDouble("IngestP99Ms", () -> ingestLatency.getPercentile(0.99) / 1000.0).atRate(PublishRate.SLOW);
+            builder.addDouble("ActivePipeline", () -> activePipeline).atRate(PublishRate.NORMAL);
+            builder.addBoolean("PipelineReady?", () -> pipelineReady).atRate(PublishRate.NORMAL);
+            builder.addDouble("LastSwitchMs", () -> lastSwitchSeconds * 1000.0).atRate(PublishRate.SLOW);
+            builder.addDouble("DroppedFrames", queue::getDropped).atRate(PublishRate.SLOW);
+        });
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public long getTargetFrames() {
+        return targetFrames;
+    }
+
+    public long getPoseFrames() {
+        return poseFrames;
+    }
+
+    public long getDroppedFrames() {
+        return queue.getDropped();
+    }
+
+    /**
+     * @return time from a frame's arrival in NetworkTables to periodic()
+     * picking it up (microseconds)
+     */
+    public LatencyHistogram getIngestLatency() {
+        return ingestLatency;
+    }
+
+    /**
+     * @return where the camera is mounted (null if it hasn't been set, in
+     * which case per-tag solving isn't possible)
+     */
+    public CameraMount getMount() {
+        return mount;
+    }
+
+    public void setMount(CameraMount mount) {
+        this.mount = mount;
+    }
+
+    /**
+     * @return name of the log channel this camera's frames are recorded to
+     */
+    public static String getInputsLogName(String tableName) {
+        return "LimelightSubsystem-" + tableName + "/Inputs";
+    }
+
+    /**
+     * Stops listening to the camera; from now on frames only come from
+     * {@link #replayFrame(int, long, double[], int)}
+     */
+    public void startReplay() {
+        replaying = true;
+    }
+
+    /**
+     * Queues a recorded frame as if it had just arrived from the camera
+     */
+    public void replayFrame(int kind, long timestampMicros, double [] values, int length) {
+        queue.offer(kind, timestampMicros, values, length);
     }
 
+    // called on the NetworkTables listener thread
+    private void enqueue(int kind, NetworkTableEvent event) {
+        if (event.valueData == null || replaying) {
+            return;
+        }
+        NetworkTableValue value = event.valueData.value;
+        queue.offer(kind, value.getTime(), value.getDoubleArray());
+    }
+
+    /**
+     * Asks the camera to switch pipelines. Unless it's already running the
+     * requested pipeline, nothing is handed out until it has switched over.
+     * Asking for {@link LimelightPipeline#UNKNOWN} means we'll take frames
+     * from whatever pipeline is running.
+     */
     public void setPipeline(LimelightPipeline desiredPipeline) {
         currentPipeline.set(desiredPipeline.id);
+        if (desiredPipeline.id == requestedPipeline) {
+            return;
+        }
+        requestedPipeline = desiredPipeline.id;
+        pipelineReady = requestedPipeline == LimelightPipeline.UNKNOWN.id
+                || requestedPipeline == activePipeline;
+        switchTimestamp = Timer.getFPGATimestamp();
+        if (!pipelineReady) {
+            // forget whatever the old pipeline told us
+            targetTimestamp = 0L;
+            consumedPoseTimestamp = poseTimestamp;
+            consumedMegaTag1Timestamp = megaTag1Timestamp;
+            consumedFiducialTimestamp = fiducialTimestamp;
+        }
+    }
+
+    /**
+     * @return the pipeline the camera says it's running
+     */
+    public LimelightPipeline getActivePipeline() {
+        return LimelightPipeline.forId(activePipeline);
+    }
+
+    /**
+     * @return true once we've seen a frame from the requested pipeline
+     */
+    public boolean isPipelineReady() {
+        return pipelineReady;
     }
 
     public LimelightPipeline getCurrentPipeline() {
         return LimelightPipeline.forId((int)currentPipeline.get());
     }
 
+    /**
+     * Fills in the supplied info from the latest targeting frame (including
+     * when it was captured, so callers can tell a new frame from an old one)
+     */
     public void updateTargetInfo(TargetInfo info) {
-        if (targetCount.get() > 0.0) {
+        if (pipelineReady && targetTimestamp > 0L && target[T2D_VALID] > 0.0) {
+            double latency = target[T2D_PIPELINE_LATENCY] + target[T2D_CAPTURE_LATENCY];
             info.setTarget(
-                    horizontalOffset.get(),
-                    verticalOffset.get(),
-                    targetArea.get());
+                    target[T2D_TX],
+                    target[T2D_TY],
+                    target[T2D_TA],
+                    targetTimestamp / 1000000.0 - latency / 1000.0);
         } else {
             info.setNoTarget();
         }
     }
 
-    public PoseEstimate getPoseEstimate() {
-        TimestampedDoubleArray data = megaTag.getAtomic();
-        if (data == null || data.value == null || data.value.length < 6) {
-            return null;
+    /**
+     * Parses the latest pose frame into the supplied estimate, unless that
+     * frame has already been handed out
+     * @return true if the estimate was updated with a new frame
+     */
+    public boolean getPoseEstimate(PoseEstimate estimate) {
+        if (!pipelineReady || poseTimestamp == consumedPoseTimestamp || poseLength < POSE_MIN_LENGTH) {
+            return false;
+        }
+        consumedPoseTimestamp = poseTimestamp;
+        estimate.update(poseTimestamp, pose, poseLength);
+        return true;
+    }
+
+    /**
+     * Like {@link #getPoseEstimate(PoseEstimate)}, but from the latest MegaTag1
+     * frame, whose position and heading don't depend on the heading we sent
+     * the camera (so it's usable before we know our heading)
+     * @return true if the estimate was updated with a new frame
+     */
+    public boolean getMegaTag1Estimate(PoseEstimate estimate) {
+        if (!pipelineReady || megaTag1Timestamp == consumedMegaTag1Timestamp || megaTag1Length < POSE_MIN_LENGTH) {
+            return false;
+        }
+        consumedMegaTag1Timestamp = megaTag1Timestamp;
+        estimate.update(megaTag1Timestamp, megaTag1Pose, megaTag1Length);
+        return true;
+    }
+
+    /**
+     * Copies the latest per-tag observations into the supplied storage, unless
+     * that frame has already been handed out
+     * @return true if there were new observations
+     */
+    public boolean getFiducials(RawFiducials out) {
+        if (!pipelineReady || fiducialTimestamp == consumedFiducialTimestamp) {
+            return false;
         }
-        return new PoseEstimate(data);
+        consumedFiducialTimestamp = fiducialTimestamp;
+        out.copyFrom(fiducials);
+        return true;
     }
 
     @Override
     public void periodic() {
-        if (fieldPoseSupplier != null) {
-            Pose2d pose = fieldPoseSupplier.get();
-            if (pose != null) {
-                fieldPose.set(new double[]{
-                        pose.getRotation().getDegrees(),
-                        0.0, 0.0, 0.0, 0.0, 0.0
-                });
+        long start = periodicTimer.start();
+        drainFrames();
+        periodicTimer.stop(start);
+    }
+
+    /**
+     * Copies every queued frame into the latest-frame storage for its kind.
+     * Frames that are too short to be valid are skipped, and so are frames
+     * that arrive before the camera has switched to the requested pipeline.
+     */
+    private void drainFrames() {
+        long now = WPIUtilJNI.now();
+        int slot = queue.peek();
+        while (slot >= 0) {
+            int kind = queue.kind(slot);
+            recordFrame(slot);
+            ingestLatency.record(now - queue.timestamp(slot));
+            if (kind == LimelightFrameQueue.PIPELINE) {
+                activePipeline = (int) queue.value(slot);
+            } else if (!checkPipelineReady()) {
+                staleFrames++;
+            } else if (kind == LimelightFrameQueue.TARGET) {
+                if (queue.length(slot) >= T2D_MIN_LENGTH) {
+                    queue.copy(slot, target);
+                    targetTimestamp = queue.timestamp(slot);
+                    targetFrames++;
+                }
+            } else if (kind == LimelightFrameQueue.POSE) {
+                if (queue.length(slot) >= POSE_MIN_LENGTH) {
+                    poseLength = queue.copy(slot, pose);
+                    poseTimestamp = queue.timestamp(slot);
+                    poseFrames++;
+                }
+            } else if (kind == LimelightFrameQueue.MEGATAG1_POSE) {
+                if (queue.length(slot) >= POSE_MIN_LENGTH) {
+                    megaTag1Length = queue.copy(slot, megaTag1Pose);
+                    megaTag1Timestamp = queue.timestamp(slot);
+                }
+            } else {
+                // rawfiducials doesn't carry latency, so we borrow it from
+                // the latest targeting frame
+                int length = queue.copy(slot, scratch);
+                fiducialTimestamp = queue.timestamp(slot);
+                double latency = target[T2D_PIPELINE_LATENCY] + target[T2D_CAPTURE_LATENCY];
+                fiducials.update(fiducialTimestamp / 1000000.0 - latency / 1000.0, scratch, length);
+                fiducialFrames++;
             }
+            queue.release();
+            slot = queue.peek();
+        }
+    }
+
+    // Logs a frame exactly as we received it, so the match can be replayed
+    // through this subsystem later. Log records only hold a few values, so
+    // longer frames are split into chunks that say where they belong.
+    private void recordFrame(int slot) {
+        int kind = queue.kind(slot);
+        long timestamp = queue.timestamp(slot);
+        int length = queue.copy(slot, scratch);
+        int offset = 0;
+        do {
+            inputs.begin().add(kind).add(timestamp).add(length).add(offset);
+            int end = Math.min(length, offset + INPUT_CHUNK_VALUES);
+            for (int i=offset; i<end; i++) {
+                inputs.add(scratch[i]);
+            }
+            inputs.end();
+            offset += INPUT_CHUNK_VALUES;
+        } while (offset < length);
+    }
+
+    // called for each data frame; the first one after the camera reports the
+    // requested pipeline completes the switch
+    private boolean checkPipelineReady() {
+        if (pipelineReady) {
+            return true;
+        }
+        if (requestedPipeline != activePipeline) {
+            return false;
         }
+        pipelineReady = true;
+        lastSwitchSeconds = Timer.getFPGATimestamp() - switchTimestamp;
+        return true;
     }
 }
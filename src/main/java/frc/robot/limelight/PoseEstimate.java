@@ -2,38 +2,98 @@ package frc.robot.limelight;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.networktables.TimestampedDoubleArray;
 
+/**
+ * A Limelight pose estimate. These are mutable and meant to be reused - the
+ * producer parses each new botpose array straight into the same instance, so
+ * consumers should copy out anything they want to keep past the current loop.
+ * The {@link Pose2d} is only built if somebody asks for it.
+ */
 public class PoseEstimate {
 
-    public final Pose2d pose;
-    public final double timestampSeconds;
-    public final double latency;
-    public final int tagCount;
-    public final double tagSpan;
-    public final double averageTagDistance;
-    public final double averageTagArea;
+    public static final PoseEstimateStruct struct = new PoseEstimateStruct();
+
+    public double x;
+    public double y;
+    public double yawDegrees;
+    public double timestampSeconds;
+    public double latency;
+    public int tagCount;
+    public double tagSpan;
+    public double averageTagDistance;
+    public double averageTagArea;
+    private Pose2d pose;
+
+    public PoseEstimate() {
+
+    }
 
     public PoseEstimate(TimestampedDoubleArray entry) {
-        double [] array = entry.value;
-        this.pose = getPose(array);
-        this.latency = getDouble(array, 6);
-        this.timestampSeconds = (entry.timestamp / 1000000.0) - (latency / 1000.0);
-        this.tagCount = (int) getDouble(array, 7);
-        this.tagSpan = getDouble(array, 8);
-        this.averageTagDistance = getDouble(array, 9);
-        this.averageTagArea = getDouble(array, 10);
+        update(entry);
+    }
+
+    public PoseEstimate(Pose2d pose, double timestampSeconds, double latency, int tagCount,
+                        double tagSpan, double averageTagDistance, double averageTagArea) {
+        set(pose.getX(), pose.getY(), pose.getRotation().getDegrees(), timestampSeconds,
+                latency, tagCount, tagSpan, averageTagDistance, averageTagArea);
+        this.pose = pose;
+    }
+
+    /**
+     * @return the estimated pose (built on first request after each update)
+     */
+    public Pose2d getPose() {
+        if (pose == null) {
+            pose = new Pose2d(x, y, Rotation2d.fromDegrees(yawDegrees));
+        }
+        return pose;
+    }
+
+    public void update(TimestampedDoubleArray entry) {
+        update(entry.timestamp, entry.value, entry.value.length);
+    }
+
+    /**
+     * Parses a botpose array into this estimate
+     * @param timestampMicros when the array arrived (NetworkTables time)
+     * @param array botpose array (may be longer than the data it holds)
+     * @param length number of valid values in the array
+     */
+    public void update(long timestampMicros, double [] array, int length) {
+        double latency = getDouble(array, length, 6);
+        set(getDouble(array, length, 0),
+                getDouble(array, length, 1),
+                getDouble(array, length, 5),
+                (timestampMicros / 1000000.0) - (latency / 1000.0),
+                latency,
+                (int) getDouble(array, length, 7),
+                getDouble(array, length, 8),
+                getDouble(array, length, 9),
+                getDouble(array, length, 10));
+    }
+
+    public void set(double x, double y, double yawDegrees, double timestampSeconds, double latency,
+                    int tagCount, double tagSpan, double averageTagDistance, double averageTagArea) {
+        this.x = x;
+        this.y = y;
+        this.yawDegrees = yawDegrees;
+        this.timestampSeconds = timestampSeconds;
+        this.latency = latency;
+        this.tagCount = tagCount;
+        this.tagSpan = tagSpan;
+        this.averageTagDistance = averageTagDistance;
+        this.averageTagArea = averageTagArea;
+        this.pose = null;
     }
 
-    private Pose2d getPose(double [] array) {
-        double tx = array[0];
-        double ty = array[1];
-        double yd = array[5];
-        return new Pose2d(new Translation2d(tx, ty), Rotation2d.fromDegrees(yd));
+    public void copyFrom(PoseEstimate other) {
+        set(other.x, other.y, other.yawDegrees, other.timestampSeconds, other.latency,
+                other.tagCount, other.tagSpan, other.averageTagDistance, other.averageTagArea);
+        this.pose = other.pose;
     }
 
-    private double getDouble(double [] array, int idx) {
-        return array.length > idx ? array[idx] : 0.0;
+    private static double getDouble(double [] array, int length, int idx) {
+        return length > idx ? array[idx] : 0.0;
     }
 }
@@ -0,0 +1,66 @@
+package frc.robot.limelight;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.util.struct.Struct;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Struct serialization for {@link PoseEstimate}, so estimates can be published
+ * and logged as a single typed value instead of a loose array
+ */
+public class PoseEstimateStruct implements Struct<PoseEstimate> {
+
+    @Override
+    public Class<PoseEstimate> getTypeClass() {
+        return PoseEstimate.class;
+    }
+
+    @Override
+    public String getTypeString() {
+        return "struct:PoseEstimate";
+    }
+
+    @Override
+    public int getSize() {
+        return Pose2d.struct.getSize() + kSizeDouble * 5 + kSizeInt32;
+    }
+
+    @Override
+    public String getSchema() {
+        return "Pose2d pose;double timestamp;double latency;int32 tag_count;"
+                + "double tag_span;double avg_tag_dist;double avg_tag_area";
+    }
+
+    @Override
+    public Struct<?>[] getNested() {
+        return new Struct<?>[] { Pose2d.struct };
+    }
+
+    @Override
+    public PoseEstimate unpack(ByteBuffer bb) {
+        Pose2d pose = Pose2d.struct.unpack(bb);
+        double timestampSeconds = bb.getDouble();
+        double latency = bb.getDouble();
+        int tagCount = bb.getInt();
+        double tagSpan = bb.getDouble();
+        double averageTagDistance = bb.getDouble();
+        double averageTagArea = bb.getDouble();
+        return new PoseEstimate(pose, timestampSeconds, latency, tagCount, tagSpan, averageTagDistance, averageTagArea);
+    }
+
+    @Override
+    public void pack(ByteBuffer bb, PoseEstimate value) {
+        // same layout as Pose2d.struct (translation x, y then rotation in
+        // radians), written directly so we don't have to build the Pose2d
+        bb.putDouble(value.x);
+        bb.putDouble(value.y);
+        bb.putDouble(Math.toRadians(value.yawDegrees));
+        bb.putDouble(value.timestampSeconds);
+        bb.putDouble(value.latency);
+        bb.putInt(value.tagCount);
+        bb.putDouble(value.tagSpan);
+        bb.putDouble(value.averageTagDistance);
+        bb.putDouble(value.averageTagArea);
+    }
+}
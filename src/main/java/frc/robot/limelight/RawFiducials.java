@@ -0,0 +1,67 @@
+package frc.robot.limelight;
+
+/**
+ * Per-tag observations from the Limelight's "rawfiducials" array, parsed into
+ * preallocated parallel arrays. The camera publishes seven values per tag:
+ * id, horizontal and vertical offset from the principal point (degrees),
+ * area (percent of image), distance to camera, distance to robot (meters)
+ * and pose ambiguity.
+ */
+public class RawFiducials {
+
+    public static final int VALUES_PER_TAG = 7;
+    public static final int MAX_TAGS = 12;
+
+    public final int [] ids;
+    public final double [] txnc;
+    public final double [] tync;
+    public final double [] area;
+    public final double [] distanceToCamera;
+    public final double [] distanceToRobot;
+    public final double [] ambiguity;
+    public int count;
+    public double timestampSeconds;
+
+    public RawFiducials() {
+        this.ids = new int[MAX_TAGS];
+        this.txnc = new double[MAX_TAGS];
+        this.tync = new double[MAX_TAGS];
+        this.area = new double[MAX_TAGS];
+        this.distanceToCamera = new double[MAX_TAGS];
+        this.distanceToRobot = new double[MAX_TAGS];
+        this.ambiguity = new double[MAX_TAGS];
+    }
+
+    /**
+     * Parses a rawfiducials array (tags beyond {@link #MAX_TAGS} are ignored)
+     * @param timestampSeconds capture time of the frame
+     * @param array rawfiducials array (may be longer than the data it holds)
+     * @param length number of valid values in the array
+     */
+    public void update(double timestampSeconds, double [] array, int length) {
+        this.timestampSeconds = timestampSeconds;
+        this.count = Math.min(length / VALUES_PER_TAG, MAX_TAGS);
+        for (int i=0; i<count; i++) {
+            int base = i * VALUES_PER_TAG;
+            ids[i] = (int) array[base];
+            txnc[i] = array[base + 1];
+            tync[i] = array[base + 2];
+            area[i] = array[base + 3];
+            distanceToCamera[i] = array[base + 4];
+            distanceToRobot[i] = array[base + 5];
+            ambiguity[i] = array[base + 6];
+        }
+    }
+
+    public void copyFrom(RawFiducials other) {
+        this.timestampSeconds = other.timestampSeconds;
+        this.count = other.count;
+        System.arraycopy(other.ids, 0, ids, 0, count);
+        System.arraycopy(other.txnc, 0, txnc, 0, count);
+        System.arraycopy(other.tync, 0, tync, 0, count);
+        System.arraycopy(other.area, 0, area, 0, count);
+        System.arraycopy(other.distanceToCamera, 0, distanceToCamera, 0, count);
+        System.arraycopy(other.distanceToRobot, 0, distanceToRobot, 0, count);
+        System.arraycopy(other.ambiguity, 0, ambiguity, 0, count);
+    }
+}
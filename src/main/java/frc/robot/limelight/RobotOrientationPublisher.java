@@ -0,0 +1,55 @@
+package frc.robot.limelight;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * Sends our heading and yaw rate to one or more Limelights for MegaTag2
+ * ("robot_orientation_set"). The camera combines it with whatever frame it
+ * captures next, so the sooner it arrives the better: we write into a reused
+ * buffer and flush NetworkTables immediately instead of waiting for the
+ * periodic flush at the end of the loop.
+ *
+ * The array is yaw, yaw rate, pitch, pitch rate, roll and roll rate, in
+ * degrees and degrees per second; we only know yaw and yaw rate.
+ */
+public class RobotOrientationPublisher {
+
+    public static final String TOPIC = "robot_orientation_set";
+
+    private final NetworkTableInstance instance;
+    private final DoubleArrayPublisher [] publishers;
+    private final double [] orientation;
+    private long published;
+
+    public RobotOrientationPublisher(String... tableNames) {
+        this(NetworkTableInstance.getDefault(), tableNames);
+    }
+
+    public RobotOrientationPublisher(NetworkTableInstance instance, String... tableNames) {
+        this.instance = instance;
+        this.publishers = new DoubleArrayPublisher[tableNames.length];
+        this.orientation = new double[6];
+        for (int i=0; i<tableNames.length; i++) {
+            publishers[i] = instance.getTable(tableNames[i]).getDoubleArrayTopic(TOPIC).publish();
+        }
+    }
+
+    public long getPublished() {
+        return published;
+    }
+
+    /**
+     * Publishes to every camera and flushes right away; call this as soon as
+     * the gyro has been read
+     */
+    public void publish(double yawDegrees, double yawRateDegreesPerSecond) {
+        orientation[0] = yawDegrees;
+        orientation[1] = yawRateDegreesPerSecond;
+        for (int i=0; i<publishers.length; i++) {
+            publishers[i].set(orientation);
+        }
+        instance.flush();
+        published++;
+    }
+}
@@ -0,0 +1,375 @@
+package frc.robot.limelight;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.DoubleSubscriber;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Stands in for a Limelight by publishing the same topics a real one would
+ * (tv/tx/ty/ta, t2d, botpose_orb_wpiblue, botpose_wpiblue, rawfiducials and
+ * getpipe) from a simulated scene: the robot's true pose comes from a
+ * supplier (driven by simulation, or scripted), and the tags it can see come
+ * from the {@link FieldTagLayout} and the camera's {@link CameraMount}.
+ *
+ * Frames are captured on a background thread at a configurable rate. Each
+ * one is held back for a configurable latency (plus random jitter) before it
+ * is published, and a configurable fraction of frames is dropped entirely.
+ * Like a real camera, we keep capturing while earlier frames are still in
+ * the pipeline - frames wait out their latency in a small queue - so the
+ * frame rate doesn't depend on the latency. Readings get a little Gaussian
+ * noise.
+ *
+ * This only needs NetworkTables, so it works on a plain desktop (see
+ * {@link LimelightBenchmark}) as well as in robot simulation. When the clock
+ * is being stepped rather than running in real time, skip the thread and
+ * call {@link #publishFrame(double)} from the stepping loop instead.
+ */
+public class SimulatedLimelight {
+
+    public static final double HORIZONTAL_FOV = Math.toRadians(62.5);
+    public static final double VERTICAL_FOV = Math.toRadians(48.9);
+    public static final double MAX_DISTANCE = 6.0;
+    // percent of the image a tag covers at one meter
+    public static final double TAG_AREA_AT_ONE_METER = 2.4;
+    public static final double ANGLE_NOISE_DEGREES = 0.1;
+    public static final double POSE_NOISE_PER_METER = 0.02;
+    public static final double CAPTURE_LATENCY_MS = 12.0;
+    // frames that can be waiting out their latency at once
+    public static final int MAX_PENDING = 64;
+
+    // a captured frame that hasn't been published yet
+    private static class PendingFrame {
+        final double [] fiducials = new double[RawFiducials.MAX_TAGS * RawFiducials.VALUES_PER_TAG];
+        Pose2d pose;
+        int count;
+        double pipelineLatency;
+        long publishNanos;
+    }
+
+    private final NetworkTableInstance instance;
+    private final CameraMount mount;
+    private final Supplier<Pose2d> truePose;
+    private final Random random;
+    private final DoublePublisher tv;
+    private final DoublePublisher tx;
+    private final DoublePublisher ty;
+    private final DoublePublisher ta;
+    private final DoublePublisher getpipe;
+    private final DoubleArrayPublisher t2d;
+    private final DoubleArrayPublisher botpose;
+    private final DoubleArrayPublisher botposeMegaTag1;
+    private final DoubleArrayPublisher rawfiducials;
+    private final DoubleSubscriber requestedPipeline;
+    private final double [] fiducials;
+    private final PendingFrame [] pending;
+    private int pendingHead;
+    private int pendingCount;
+    private double framesPerSecond;
+    private double latencyMs;
+    private double jitterMs;
+    private double dropout;
+    private volatile boolean running;
+    private Thread thread;
+    private volatile long published;
+    private volatile long dropped;
+
+    public SimulatedLimelight(String tableName, CameraMount mount, Supplier<Pose2d> truePose) {
+        this(NetworkTableInstance.getDefault(), tableName, mount, truePose, 0L);
+    }
+
+    public SimulatedLimelight(NetworkTableInstance instance, String tableName, CameraMount mount,
+                              Supplier<Pose2d> truePose, long seed) {
+
+        this.instance = instance;
+        this.mount = mount;
+        this.truePose = truePose;
+        this.random = new Random(seed);
+        this.framesPerSecond = 30.0;
+        this.latencyMs = 20.0;
+        this.jitterMs = 5.0;
+        this.dropout = 0.0;
+        this.fiducials = new double[RawFiducials.MAX_TAGS * RawFiducials.VALUES_PER_TAG];
+        this.pending = new PendingFrame[MAX_PENDING];
+        for (int i=0; i<MAX_PENDING; i++) {
+            pending[i] = new PendingFrame();
+        }
+
+        NetworkTable table = instance.getTable(tableName);
+        tv = table.getDoubleTopic("tv").publish();
+        tx = table.getDoubleTopic("tx").publish();
+        ty = table.getDoubleTopic("ty").publish();
+        ta = table.getDoubleTopic("ta").publish();
+        getpipe = table.getDoubleTopic("getpipe").publish();
+        t2d = table.getDoubleArrayTopic("t2d").publish();
+        botpose = table.getDoubleArrayTopic("botpose_orb_wpiblue").publish();
+        botposeMegaTag1 = table.getDoubleArrayTopic("botpose_wpiblue").publish();
+        rawfiducials = table.getDoubleArrayTopic("rawfiducials").publish();
+        requestedPipeline = table.getDoubleTopic("pipeline").subscribe(0.0);
+
+        FieldTagLayout.load();
+    }
+
+    public SimulatedLimelight withFrameRate(double framesPerSecond) {
+        this.framesPerSecond = framesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param latencyMs average time from capture to publication
+     * @param jitterMs standard deviation of the latency
+     */
+    public SimulatedLimelight withLatency(double latencyMs, double jitterMs) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        return this;
+    }
+
+    /**
+     * @param dropout fraction of frames (0 to 1) that are never published
+     */
+    public SimulatedLimelight withDropout(double dropout) {
+        this.dropout = dropout;
+        return this;
+    }
+
+    public long getPublished() {
+        return published;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "SimulatedLimelight");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    // Captures on the frame period and publishes each frame when its latency
+    // is up, sleeping until whichever of those comes first
+    private void run() {
+        long periodNanos = (long) (1_000_000_000L / framesPerSecond);
+        long nextCapture = System.nanoTime();
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                if (now - nextCapture >= 0) {
+                    captureFrame(now);
+                    nextCapture += periodNanos;
+                    if (now - nextCapture >= 0) {
+                        // we fell a whole frame behind, so start counting
+                        // again from now
+                        nextCapture = now + periodNanos;
+                    }
+                }
+                publishDue(now);
+
+                long wake = nextCapture;
+                if (pendingCount > 0 && pending[pendingHead].publishNanos - wake < 0) {
+                    wake = pending[pendingHead].publishNanos;
+                }
+                long sleep = wake - System.nanoTime();
+                if (sleep > 0) {
+                    Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // sees what the camera sees now, and queues it to be published once its
+    // latency is up
+    private void captureFrame(long now) {
+
+        Pose2d pose = truePose.get();
+        if (pose == null) {
+            return;
+        }
+
+        if (random.nextDouble() < dropout || pendingCount == pending.length) {
+            dropped++;
+            return;
+        }
+
+        double totalLatency = Math.max(CAPTURE_LATENCY_MS + 1.0, latencyMs + random.nextGaussian() * jitterMs);
+        long publishNanos = now + (long) (totalLatency * 1_000_000.0);
+
+        // the camera publishes frames in the order it captured them, so
+        // jitter can hold a frame up behind the previous one but never
+        // move it ahead
+        if (pendingCount > 0) {
+            long previous = pending[(pendingHead + pendingCount - 1) % pending.length].publishNanos;
+            if (publishNanos - previous < 0) {
+                publishNanos = previous;
+            }
+        }
+
+        PendingFrame frame = pending[(pendingHead + pendingCount) % pending.length];
+        frame.pose = pose;
+        frame.count = observe(pose, frame.fiducials);
+        frame.pipelineLatency = (publishNanos - now) / 1_000_000.0 - CAPTURE_LATENCY_MS;
+        frame.publishNanos = publishNanos;
+        pendingCount++;
+    }
+
+    private void publishDue(long now) {
+        while (pendingCount > 0 && now - pending[pendingHead].publishNanos >= 0) {
+            PendingFrame frame = pending[pendingHead];
+            publish(frame.pose, frame.fiducials, frame.count, frame.pipelineLatency);
+            published++;
+            frame.pose = null;
+            pendingHead = (pendingHead + 1) % pending.length;
+            pendingCount--;
+        }
+    }
+
+    /**
+     * Captures and publishes a frame right away, reporting the supplied
+     * latency rather than waiting it out (don't use this together with
+     * {@link #start()})
+     */
+    public void publishFrame(double latencyMs) {
+        Pose2d pose = truePose.get();
+        if (pose == null) {
+            return;
+        }
+        int count = observe(pose, fiducials);
+        publish(pose, fiducials, count, Math.max(1.0, latencyMs - CAPTURE_LATENCY_MS));
+        published++;
+    }
+
+    /**
+     * Fills in a rawfiducials array with every tag that's in view
+     * @return the number of tags seen
+     */
+    private int observe(Pose2d pose, double [] fiducials) {
+
+        double heading = pose.getRotation().getRadians();
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        double cameraX = pose.getX() + mount.forward * cos - mount.left * sin;
+        double cameraY = pose.getY() + mount.forward * sin + mount.left * cos;
+        double cameraHeading = heading + mount.yaw;
+
+        int count = 0;
+        for (int id=0; id<=FieldTagLayout.MAX_ID && count<RawFiducials.MAX_TAGS; id++) {
+
+            if (!FieldTagLayout.hasTag(id)) {
+                continue;
+            }
+
+            double dx = FieldTagLayout.getX(id) - cameraX;
+            double dy = FieldTagLayout.getY(id) - cameraY;
+            double planar = Math.hypot(dx, dy);
+            if (planar > MAX_DISTANCE || planar < 0.1) {
+                continue;
+            }
+
+            // the tag has to be facing us
+            double bearing = Math.atan2(dy, dx);
+            if (Math.cos(FieldTagLayout.getYaw(id) - (bearing + Math.PI)) <= 0.0) {
+                continue;
+            }
+
+            double horizontal = MathUtil.angleModulus(bearing - cameraHeading);
+            double vertical = Math.atan2(FieldTagLayout.getZ(id) - mount.height, planar) - mount.pitch;
+            if (Math.abs(horizontal) > HORIZONTAL_FOV / 2.0 || Math.abs(vertical) > VERTICAL_FOV / 2.0) {
+                continue;
+            }
+
+            double heightDifference = FieldTagLayout.getZ(id) - mount.height;
+            double distance = Math.hypot(planar, heightDifference);
+            int base = count * RawFiducials.VALUES_PER_TAG;
+            fiducials[base] = id;
+            fiducials[base + 1] = -Math.toDegrees(horizontal) + random.nextGaussian() * ANGLE_NOISE_DEGREES;
+            fiducials[base + 2] = Math.toDegrees(vertical) + random.nextGaussian() * ANGLE_NOISE_DEGREES;
+            fiducials[base + 3] = TAG_AREA_AT_ONE_METER / (distance * distance);
+            fiducials[base + 4] = distance;
+            fiducials[base + 5] = Math.hypot(FieldTagLayout.getX(id) - pose.getX(), FieldTagLayout.getY(id) - pose.getY());
+            fiducials[base + 6] = Math.min(1.0, 0.02 * planar);
+            count++;
+        }
+        return count;
+    }
+
+    private void publish(Pose2d pose, double [] fiducials, int count, double pipelineLatency) {
+
+        int best = -1;
+        double distanceSum = 0.0;
+        double areaSum = 0.0;
+        double minX = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        for (int i=0; i<count; i++) {
+            int base = i * RawFiducials.VALUES_PER_TAG;
+            if (best < 0 || fiducials[base + 3] > fiducials[best * RawFiducials.VALUES_PER_TAG + 3]) {
+                best = i;
+            }
+            distanceSum += fiducials[base + 4];
+            areaSum += fiducials[base + 3];
+            int id = (int) fiducials[base];
+            minX = Math.min(minX, FieldTagLayout.getX(id));
+            maxX = Math.max(maxX, FieldTagLayout.getX(id));
+        }
+
+        double totalLatency = pipelineLatency + CAPTURE_LATENCY_MS;
+        double valid = count > 0 ? 1.0 : 0.0;
+        double bestTx = best < 0 ? 0.0 : fiducials[best * RawFiducials.VALUES_PER_TAG + 1];
+        double bestTy = best < 0 ? 0.0 : fiducials[best * RawFiducials.VALUES_PER_TAG + 2];
+        double bestTa = best < 0 ? 0.0 : fiducials[best * RawFiducials.VALUES_PER_TAG + 3];
+
+        getpipe.set(requestedPipeline.get());
+        tv.set(valid);
+        tx.set(bestTx);
+        ty.set(bestTy);
+        ta.set(bestTa);
+        t2d.set(new double[] {
+                valid, count, pipelineLatency, CAPTURE_LATENCY_MS,
+                bestTx, bestTy, bestTx, bestTy, bestTa,
+                best < 0 ? -1 : fiducials[best * RawFiducials.VALUES_PER_TAG],
+                0, 0, 0, 0, 0, 0, 0
+        });
+
+        double [] array = new double[11 + count * RawFiducials.VALUES_PER_TAG];
+        if (count > 0) {
+            double averageDistance = distanceSum / count;
+            double noise = POSE_NOISE_PER_METER * averageDistance;
+            array[0] = pose.getX() + random.nextGaussian() * noise;
+            array[1] = pose.getY() + random.nextGaussian() * noise;
+            array[5] = pose.getRotation().getDegrees();
+            array[6] = totalLatency;
+            array[7] = count;
+            array[8] = maxX - minX;
+            array[9] = averageDistance;
+            array[10] = areaSum / count;
+            System.arraycopy(fiducials, 0, array, 11, count * RawFiducials.VALUES_PER_TAG);
+        }
+        // we know the true heading, so MegaTag1 and MegaTag2 come out the same
+        botpose.set(array);
+        botposeMegaTag1.set(array);
+        rawfiducials.set(Arrays.copyOf(fiducials, count * RawFiducials.VALUES_PER_TAG));
+
+        instance.flush();
+    }
+}
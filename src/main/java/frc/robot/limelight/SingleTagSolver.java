@@ -0,0 +1,85 @@
+package frc.robot.limelight;
+
+/**
+ * Computes a robot pose from a single tag observation, using the tag's known
+ * position from the {@link FieldTagLayout}, where the camera is mounted and
+ * our own heading. Because each tag gets its own solution, tags can be
+ * weighted (or thrown out) individually instead of all-or-nothing.
+ *
+ * The horizontal distance to the tag comes from the camera's per-tag
+ * distance and the known height difference; if the camera didn't report a
+ * usable distance we fall back to trigonometry on the vertical angle. The
+ * bearing comes from the horizontal angle, measured from the principal point.
+ */
+public class SingleTagSolver {
+
+    public static final double DEFAULT_MAX_AMBIGUITY = 0.2;
+    public static final double MIN_TRIG_ANGLE = Math.toRadians(3.0);
+
+    private double maxAmbiguity;
+
+    public SingleTagSolver() {
+        this.maxAmbiguity = DEFAULT_MAX_AMBIGUITY;
+    }
+
+    public double getMaxAmbiguity() {
+        return maxAmbiguity;
+    }
+
+    public void setMaxAmbiguity(double maxAmbiguity) {
+        this.maxAmbiguity = maxAmbiguity;
+    }
+
+    /**
+     * Solves for the robot pose from the i-th tag in a set of observations
+     * @param mount where the camera that saw the tag is mounted
+     * @param headingRadians robot heading when the frame was captured
+     * @param out estimate to fill in
+     * @return false if the tag is unknown, too ambiguous, or the geometry
+     * doesn't work out
+     */
+    public boolean solve(CameraMount mount, RawFiducials fiducials, int i, double headingRadians, PoseEstimate out) {
+
+        int id = fiducials.ids[i];
+        if (!FieldTagLayout.hasTag(id) || fiducials.ambiguity[i] > maxAmbiguity) {
+            return false;
+        }
+
+        double heightDifference = FieldTagLayout.getZ(id) - mount.height;
+        double distance = fiducials.distanceToCamera[i];
+        double planar;
+        if (distance > Math.abs(heightDifference)) {
+            planar = Math.sqrt(distance * distance - heightDifference * heightDifference);
+        } else {
+            double angle = mount.pitch + Math.toRadians(fiducials.tync[i]);
+            if (Math.abs(angle) < MIN_TRIG_ANGLE) {
+                return false;
+            }
+            planar = heightDifference / Math.tan(angle);
+            if (planar <= 0.0) {
+                return false;
+            }
+        }
+
+        // Limelight angles are positive to the right; ours are counter-clockwise
+        double bearing = headingRadians + mount.yaw - Math.toRadians(fiducials.txnc[i]);
+        double cameraX = FieldTagLayout.getX(id) - planar * Math.cos(bearing);
+        double cameraY = FieldTagLayout.getY(id) - planar * Math.sin(bearing);
+
+        double cos = Math.cos(headingRadians);
+        double sin = Math.sin(headingRadians);
+        double robotX = cameraX - (mount.forward * cos - mount.left * sin);
+        double robotY = cameraY - (mount.forward * sin + mount.left * cos);
+
+        out.set(robotX,
+                robotY,
+                Math.toDegrees(headingRadians),
+                fiducials.timestampSeconds,
+                0.0,
+                1,
+                0.0,
+                planar,
+                fiducials.area[i]);
+        return true;
+    }
+}
@@ -6,18 +6,28 @@ public class TargetInfo {
     public double horizontalOffset;
     public double verticalOffset;
     public double targetArea;
+    public double timestampSeconds;
 
     public void setNoTarget() {
         this.hasTarget = false;
         this.horizontalOffset = 0.0;
         this.verticalOffset = 0.0;
         this.targetArea = 0.0;
+        this.timestampSeconds = 0.0;
     }
 
     public void setTarget(double horizontalOffset, double verticalOffset, double targetArea) {
+        setTarget(horizontalOffset, verticalOffset, targetArea, 0.0);
+    }
+
+    /**
+     * @param timestampSeconds when the frame was captured
+     */
+    public void setTarget(double horizontalOffset, double verticalOffset, double targetArea, double timestampSeconds) {
         this.hasTarget = true;
         this.horizontalOffset = horizontalOffset;
         this.verticalOffset = verticalOffset;
         this.targetArea = targetArea;
+        this.timestampSeconds = timestampSeconds;
     }
 }
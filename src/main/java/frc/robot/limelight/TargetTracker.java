@@ -0,0 +1,133 @@
+package frc.robot.limelight;
+
+/**
+ * One-dimensional Kalman filter on the bearing to a target (degrees, same
+ * sign convention as the Limelight's tx - positive means the target is to
+ * the right). Between camera frames we predict the bearing from our own yaw
+ * rate; when a frame arrives, its tx is first brought forward from the
+ * capture time to now using how far we've turned since, and then blended in
+ * according to how much we trust it versus our prediction.
+ *
+ * If we go too long without a frame, the track is dropped.
+ */
+public class TargetTracker {
+
+    public static final double DEFAULT_PROCESS_NOISE = 20.0;
+    public static final double DEFAULT_MEASUREMENT_NOISE = 0.5;
+    public static final double DEFAULT_TIMEOUT = 0.25;
+
+    private double processNoise;
+    private double measurementNoise;
+    private double timeout;
+    private boolean tracking;
+    private double bearing;
+    private double variance;
+    private double lastPredictTimestamp;
+    private double lastMeasurementTimestamp;
+
+    public TargetTracker() {
+        this.processNoise = DEFAULT_PROCESS_NOISE;
+        this.measurementNoise = DEFAULT_MEASUREMENT_NOISE;
+        this.timeout = DEFAULT_TIMEOUT;
+        reset();
+    }
+
+    public double getProcessNoise() {
+        return processNoise;
+    }
+
+    /**
+     * @param processNoise how quickly our uncertainty grows between frames
+     * (degrees squared per second)
+     */
+    public void setProcessNoise(double processNoise) {
+        this.processNoise = processNoise;
+    }
+
+    public double getMeasurementNoise() {
+        return measurementNoise;
+    }
+
+    /**
+     * @param measurementNoise variance of a single tx reading (degrees squared)
+     */
+    public void setMeasurementNoise(double measurementNoise) {
+        this.measurementNoise = measurementNoise;
+    }
+
+    public void setTimeout(double timeout) {
+        this.timeout = timeout;
+    }
+
+    public void reset() {
+        tracking = false;
+        bearing = 0.0;
+        variance = Double.POSITIVE_INFINITY;
+        lastPredictTimestamp = Double.NaN;
+        lastMeasurementTimestamp = Double.NaN;
+    }
+
+    public boolean isTracking() {
+        return tracking;
+    }
+
+    /**
+     * @return predicted bearing to the target right now (degrees)
+     */
+    public double getBearing() {
+        return bearing;
+    }
+
+    /**
+     * @return capture time of the latest frame we've folded in (NaN if none)
+     */
+    public double getLastMeasurementTimestamp() {
+        return lastMeasurementTimestamp;
+    }
+
+    public double getVariance() {
+        return variance;
+    }
+
+    /**
+     * Advances the prediction to the supplied time. Turning counter-clockwise
+     * sweeps the camera left, so the target drifts to the right.
+     */
+    public void predict(double timestampSeconds, double yawRateRadiansPerSecond) {
+        if (tracking) {
+            double dt = timestampSeconds - lastPredictTimestamp;
+            if (dt > 0.0) {
+                bearing += Math.toDegrees(yawRateRadiansPerSecond) * dt;
+                variance += processNoise * dt;
+            }
+            if (timestampSeconds - lastMeasurementTimestamp > timeout) {
+                reset();
+            }
+        }
+        lastPredictTimestamp = timestampSeconds;
+    }
+
+    /**
+     * Folds in a camera reading
+     * @param captureTimestamp when the frame was captured
+     * @param tx horizontal offset in the frame (degrees)
+     * @param turnedSinceCapture how far we've turned since the frame was
+     * captured (radians, counter-clockwise)
+     */
+    public void correct(double captureTimestamp, double tx, double turnedSinceCapture) {
+        if (captureTimestamp <= lastMeasurementTimestamp) {
+            return;
+        }
+        double measured = tx + Math.toDegrees(turnedSinceCapture);
+        if (!tracking) {
+            bearing = measured;
+            variance = measurementNoise;
+            tracking = true;
+        } else {
+            double gain = variance / (variance + measurementNoise);
+            bearing += gain * (measured - bearing);
+            variance *= 1.0 - gain;
+        }
+        lastMeasurementTimestamp = captureTimestamp;
+    }
+}
@@ -0,0 +1,252 @@
+package frc.robot.limelight;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.swerve.PoseHistory;
+import frc.robot.swerve.SwerveDriveSubsystem;
+import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
+
+/**
+ * Sits between the {@link LimelightSubsystem} and the drive's pose estimator.
+ * Cheap checks on the tag statistics throw out frames that we know are bad
+ * before they get anywhere near pose fusion; frames that pass get standard
+ * deviations based on how many tags were seen and how far away they were.
+ *
+ * An estimate is rejected if:
+ * <ul>
+ *     <li>it saw no tags</li>
+ *     <li>the tags were further away than we trust</li>
+ *     <li>it puts the robot off the field</li>
+ *     <li>it disagrees with where odometry says we were when the frame was
+ *     captured by more than we could explain (we allow more disagreement the
+ *     faster we're driving, since wheel slip and timing error grow with
+ *     speed)</li>
+ *     <li>it's older than our odometry history</li>
+ * </ul>
+ *
+ * The jump check only works once odometry knows roughly where we are, and
+ * every estimator starts at the origin facing 0, which is nowhere near where
+ * the robot starts on a real field. MegaTag2 estimates are solved using that
+ * heading, so they can't tell us where we are either. So until we've been
+ * seeded, every estimate is rejected, and instead the first good multi-tag
+ * MegaTag1 estimate (which solves for heading from the tags alone) is taken
+ * as our pose outright (see {@link #needsSeed()} and
+ * {@link #testSeed(PoseEstimate)}). The same happens if every estimate for a
+ * while has been rejected as a jump, since then it's more likely odometry is
+ * lost than that the cameras all agree on the wrong answer.
+ */
+public class VisionMeasurementFilter {
+
+    public static final double FIELD_LENGTH = 16.54;
+    public static final double FIELD_WIDTH = 8.21;
+    public static final double FIELD_MARGIN = 0.5;
+
+    public static final double DEFAULT_MAX_TAG_DISTANCE = 5.0;
+    public static final double DEFAULT_JUMP_TOLERANCE = 1.0;
+    public static final double DEFAULT_JUMP_PER_SPEED = 0.25;
+    public static final double DEFAULT_TRANSLATION_STDDEV = 0.1;
+    public static final double DEFAULT_SINGLE_TAG_FACTOR = 3.0;
+    public static final double DEFAULT_RESEED_REJECTIONS = 50;
+
+    private final SwerveDriveSubsystem drive;
+    private final double [] odometryPose;
+    private double maxTagDistance;
+    private double jumpTolerance;
+    private double jumpPerSpeed;
+    private double baseTranslationStdDev;
+    private double singleTagFactor;
+    private boolean trustRotation;
+    private double translationStdDev;
+    private double rotationStdDev;
+    private double lastJump;
+    private double reseedRejections;
+    private boolean seeded;
+    private int consecutiveJumps;
+    private long seeds;
+    private long accepted;
+    private long rejectedNoTags;
+    private long rejectedDistance;
+    private long rejectedOffField;
+    private long rejectedJump;
+    private long rejectedNoHistory;
+    private long rejectedNotSeeded;
+
+    public VisionMeasurementFilter(SwerveDriveSubsystem drive) {
+
+        this.drive = drive;
+        this.odometryPose = new double[3];
+        this.maxTagDistance = DEFAULT_MAX_TAG_DISTANCE;
+        this.jumpTolerance = DEFAULT_JUMP_TOLERANCE;
+        this.jumpPerSpeed = DEFAULT_JUMP_PER_SPEED;
+        this.baseTranslationStdDev = DEFAULT_TRANSLATION_STDDEV;
+        this.singleTagFactor = DEFAULT_SINGLE_TAG_FACTOR;
+        this.trustRotation = false;
+        this.reseedRejections = DEFAULT_RESEED_REJECTIONS;
+
+        SmarterDashboard.putData("VisionMeasurementFilter", builder -> {
+            builder.addDouble("Tuning/MaxTagDistance", () -> maxTagDistance, val -> maxTagDistance = val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("Tuning/JumpTolerance", () -> jumpTolerance, val -> jumpTolerance = val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("Tuning/JumpPerSpeed", () -> jumpPerSpeed, val -> jumpPerSpeed = val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("Tuning/TranslationStdDev", () -> baseTranslationStdDev, val -> baseTranslationStdDev = val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("Tuning/SingleTagFactor", () -> singleTagFactor, val -> singleTagFactor = val).atRate(PublishRate.ON_CHANGE);
+            builder.addBoolean("Tuning/TrustRotation?", () -> trustRotation, val -> trustRotation = val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("Tuning/ReseedRejections", () -> reseedRejections, val -> reseedRejections = val).atRate(PublishRate.ON_CHANGE);
+            builder.addBoolean("Seeded?", () -> seeded).atRate(PublishRate.NORMAL);
+            builder.addDouble("Seeds", () -> seeds).atRate(PublishRate.SLOW);
+            builder.addDouble("Output/TranslationStdDev", () -> translationStdDev).atRate(PublishRate.NORMAL);
+            builder.addDouble("Output/LastJump", () -> lastJump).atRate(PublishRate.NORMAL);
+            builder.addDouble("Accepted", () -> accepted).atRate(PublishRate.SLOW);
+            builder.addDouble("Rejected/NoTags", () -> rejectedNoTags).atRate(PublishRate.SLOW);
+            builder.addDouble("Rejected/Distance", () -> rejectedDistance).atRate(PublishRate.SLOW);
+            builder.addDouble("Rejected/OffField", () -> rejectedOffField).atRate(PublishRate.SLOW);
+            builder.addDouble("Rejected/Jump", () -> rejectedJump).atRate(PublishRate.SLOW);
+            builder.addDouble("Rejected/NoHistory", () -> rejectedNoHistory).atRate(PublishRate.SLOW);
+            builder.addDouble("Rejected/NotSeeded", () -> rejectedNotSeeded).atRate(PublishRate.SLOW);
+        });
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getRejected() {
+        return rejectedNoTags + rejectedDistance + rejectedOffField + rejectedJump + rejectedNoHistory + rejectedNotSeeded;
+    }
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * @return true if odometry doesn't know where we are yet (or has lost
+     * track), so estimates are only useful through {@link #testSeed(PoseEstimate)}
+     */
+    public boolean needsSeed() {
+        return !seeded || consecutiveJumps >= reseedRejections;
+    }
+
+    /**
+     * Forgets the seed, so the next good multi-tag MegaTag1 estimate is taken
+     * as our pose (e.g. after the pose has been reset by hand)
+     */
+    public void unseed() {
+        seeded = false;
+        consecutiveJumps = 0;
+    }
+
+    /**
+     * @return translation standard deviation (meters) for the last accepted estimate
+     */
+    public double getTranslationStdDev() {
+        return translationStdDev;
+    }
+
+    /**
+     * @return rotation standard deviation (radians) for the last accepted
+     * estimate; infinite unless we've been told to trust the camera's heading
+     * (MegaTag2 takes its heading from our gyro, so by default it tells us
+     * nothing new)
+     */
+    public double getRotationStdDev() {
+        return rotationStdDev;
+    }
+
+    /**
+     * Checks an estimate and, if it passes, computes its standard deviations
+     * @return true if the estimate should be fused
+     */
+    public boolean test(PoseEstimate estimate) {
+
+        if (!checkTags(estimate)) {
+            return false;
+        }
+
+        // until odometry knows where we are, there's nothing to compare
+        // against (and the estimate was solved with a heading we made up)
+        if (needsSeed()) {
+            rejectedNotSeeded++;
+            return false;
+        }
+
+        if (!drive.getPoseEstimator().getPoseAt(estimate.timestampSeconds, odometryPose)) {
+            rejectedNoHistory++;
+            return false;
+        }
+
+        ChassisSpeeds speeds = drive.getSpeeds();
+        double speed = Math.hypot(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond);
+        lastJump = Math.hypot(
+                estimate.x - odometryPose[PoseHistory.X],
+                estimate.y - odometryPose[PoseHistory.Y]);
+        if (lastJump > jumpTolerance + speed * jumpPerSpeed) {
+            consecutiveJumps++;
+            rejectedJump++;
+            return false;
+        }
+
+        consecutiveJumps = 0;
+        computeStdDevs(estimate);
+        accepted++;
+        return true;
+    }
+
+    /**
+     * Checks a heading-independent (MegaTag1) estimate for use as our pose
+     * outright; call this only while {@link #needsSeed()}. A single tag
+     * isn't enough to start from, since it's prone to pose ambiguity.
+     * @return true if the estimate should replace our pose, including its heading
+     */
+    public boolean testSeed(PoseEstimate estimate) {
+
+        if (!checkTags(estimate)) {
+            return false;
+        }
+
+        if (estimate.tagCount < 2) {
+            rejectedNotSeeded++;
+            return false;
+        }
+
+        computeStdDevs(estimate);
+        seeded = true;
+        consecutiveJumps = 0;
+        seeds++;
+        accepted++;
+        return true;
+    }
+
+    // the checks that don't need to know where we are
+    private boolean checkTags(PoseEstimate estimate) {
+
+        if (estimate.tagCount < 1) {
+            rejectedNoTags++;
+            return false;
+        }
+
+        if (estimate.averageTagDistance > maxTagDistance) {
+            rejectedDistance++;
+            return false;
+        }
+
+        if (estimate.x < -FIELD_MARGIN || estimate.x > FIELD_LENGTH + FIELD_MARGIN
+                || estimate.y < -FIELD_MARGIN || estimate.y > FIELD_WIDTH + FIELD_MARGIN) {
+            rejectedOffField++;
+            return false;
+        }
+
+        return true;
+    }
+
+    private void computeStdDevs(PoseEstimate estimate) {
+        // error grows roughly with the square of distance, and shrinks with
+        // more tags; a single tag is also prone to pose ambiguity
+        double distance = estimate.averageTagDistance;
+        translationStdDev = baseTranslationStdDev * (1.0 + distance * distance) / estimate.tagCount;
+        if (estimate.tagCount == 1) {
+            translationStdDev *= singleTagFactor;
+        }
+        rotationStdDev = trustRotation && estimate.tagCount > 1
+                ? translationStdDev
+                : Double.POSITIVE_INFINITY;
+    }
+}
@@ -1,10 +1,12 @@
 package frc.robot.swerve;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
 
 /**
  * Command to align the robot to a fixed heading.
@@ -25,18 +27,20 @@ public class AlignToDirectionCommand extends Command {
 
         this.drive = drive;
         this.pid = new PIDController(DEFAULT_KP, 0.0, 0.0);
+        this.pid.enableContinuousInput(-Math.PI, Math.PI);
         this.speeds = new ChassisSpeeds();
         this.targetRadians = targetRadians;
         this.currentRadians = Double.NaN;
         this.active = false;
 
-        SmarterDashboard.putData("AlignToDirectionCommand-"+Units.degreesToRadians(targetRadians), builder -> {
-            builder.addBoolean("Active?", () -> active);
-            builder.displayAsDegrees("CurrentHeading", () -> currentRadians);
-            builder.displayAsDegrees("CurrentHeading", () -> currentRadians);
-            builder.addDouble("kP", pid::getP, pid::setP);
-            builder.displayAsDegrees("TargetHeading", () -> targetRadians);
-            builder.displayAsDegrees("Speed", () -> speeds.omegaRadiansPerSecond);
+        addRequirements(drive);
+
+        SmarterDashboard.putData("AlignToDirectionCommand-"+Math.round(Units.radiansToDegrees(targetRadians)), builder -> {
+            builder.addBoolean("Active?", () -> active).atRate(PublishRate.NORMAL);
+            builder.displayAsDegrees("CurrentHeading", () -> currentRadians).atRate(PublishRate.FAST);
+            builder.addDouble("kP", pid::getP, pid::setP).atRate(PublishRate.ON_CHANGE);
+            builder.displayAsDegrees("TargetHeading", () -> targetRadians).atRate(PublishRate.SLOW);
+            builder.displayAsDegrees("Speed", () -> speeds.omegaRadiansPerSecond).atRate(PublishRate.FAST);
         });
 
     }
@@ -48,17 +52,17 @@ public class AlignToDirectionCommand extends Command {
 
     @Override
     public void execute() {
-
-        currentRadians = drive.getPose().getRotation().getDegrees();
-        if (Math.abs(targetRadians - currentRadians) < THRESHOLD) {
-            end(false);
-            return;
-        }
-
+        currentRadians = drive.getPose().getRotation().getRadians();
         speeds.omegaRadiansPerSecond = pid.calculate(currentRadians, targetRadians);
         drive.driveRobotRelative(speeds);
     }
 
+    @Override
+    public boolean isFinished() {
+        return Double.isFinite(currentRadians)
+                && Math.abs(MathUtil.angleModulus(targetRadians - currentRadians)) < THRESHOLD;
+    }
+
     @Override
     public void end(boolean interrupted) {
         speeds.omegaRadiansPerSecond = 0.0;
@@ -3,6 +3,7 @@ package frc.robot.swerve;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
 
 /**
  * Command to drive the robot at a fixed speed. Use e.g. {@link Command#withTimeout(double)}
@@ -23,10 +24,10 @@ public class DriveAtFixedSpeedCommand extends Command {
         addRequirements(drive);
 
         SmarterDashboard.putData(name, builder -> {
-            builder.addBoolean("Active?", () -> active);
-            builder.displayAsDegrees("SpeedOmega", () -> driveSpeed.omegaRadiansPerSecond);
-            builder.displayAsFeet("SpeedX", () -> driveSpeed.vxMetersPerSecond);
-            builder.displayAsFeet("SpeedY", () -> driveSpeed.vyMetersPerSecond);
+            builder.addBoolean("Active?", () -> active).atRate(PublishRate.NORMAL);
+            builder.displayAsDegrees("SpeedOmega", () -> driveSpeed.omegaRadiansPerSecond).atRate(PublishRate.SLOW);
+            builder.displayAsFeet("SpeedX", () -> driveSpeed.vxMetersPerSecond).atRate(PublishRate.SLOW);
+            builder.displayAsFeet("SpeedY", () -> driveSpeed.vyMetersPerSecond).atRate(PublishRate.SLOW);
         });
     }
 
@@ -42,7 +43,7 @@ public class DriveAtFixedSpeedCommand extends Command {
 
     @Override
     public boolean isFinished() {
-        return active;
+        return false;
     }
 
     @Override
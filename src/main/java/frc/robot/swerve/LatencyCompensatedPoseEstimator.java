@@ -0,0 +1,192 @@
+package frc.robot.swerve;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.limelight.PoseEstimate;
+import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
+
+/**
+ * Fuses odometry with vision measurements that arrive late. Every odometry
+ * update is recorded in a {@link PoseHistory}; a vision measurement is
+ * compared against the pose we believed we had <i>when the camera captured
+ * the frame</i>, not the pose we have now, and the resulting correction is
+ * applied to that point in history and carried forward to the present
+ * (everything we've driven since the capture keeps its shape relative to the
+ * corrected pose).
+ *
+ * Each correction moves part of the way towards the measurement, according
+ * to the supplied gains (0 ignores vision, 1 trusts it completely). Gains can
+ * also be derived from standard deviations: the more uncertain the
+ * measurement is compared to our own estimate, the less we move.
+ */
+public class LatencyCompensatedPoseEstimator {
+
+    public static final int DEFAULT_HISTORY_SIZE = 256;
+    public static final double DEFAULT_TRANSLATION_STDDEV = 0.1;
+    public static final double DEFAULT_ROTATION_STDDEV = 0.05;
+
+    private final PoseHistory history;
+    private final double [] sampled;
+    private double x;
+    private double y;
+    private double theta;
+    private Pose2d pose;
+    private long applied;
+    private long outOfRange;
+    private double lastCorrection;
+    private double translationStdDev;
+    private double rotationStdDev;
+
+    public LatencyCompensatedPoseEstimator(String name) {
+        this(name, DEFAULT_HISTORY_SIZE);
+    }
+
+    public LatencyCompensatedPoseEstimator(String name, int historySize) {
+        this.history = new PoseHistory(historySize);
+        this.sampled = new double[3];
+        this.translationStdDev = DEFAULT_TRANSLATION_STDDEV;
+        this.rotationStdDev = DEFAULT_ROTATION_STDDEV;
+
+        SmarterDashboard.putData(name, builder -> {
+            builder.addDouble("VisionApplied", () -> applied).atRate(PublishRate.SLOW);
+            builder.addDouble("VisionOutOfRange", () -> outOfRange).atRate(PublishRate.SLOW);
+            builder.addDouble("LastCorrectionMeters", () -> lastCorrection).atRate(PublishRate.NORMAL);
+            builder.addDouble("TranslationStdDev", () -> translationStdDev, val -> translationStdDev = val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("RotationStdDev", () -> rotationStdDev, val -> rotationStdDev = val).atRate(PublishRate.ON_CHANGE);
+        });
+    }
+
+    /**
+     * @return the current estimate (built on first request after each change)
+     */
+    public Pose2d getPose() {
+        if (pose == null) {
+            pose = new Pose2d(x, y, new Rotation2d(theta));
+        }
+        return pose;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return heading in radians (not wrapped)
+     */
+    public double getTheta() {
+        return theta;
+    }
+
+    /**
+     * Interpolates the estimated pose at a past time into out (x, y, theta)
+     * @return false if the time isn't covered by the history
+     */
+    public boolean getPoseAt(double timestampSeconds, double [] out) {
+        return history.sample(timestampSeconds, out);
+    }
+
+    /**
+     * Forgets all history and starts over from the supplied pose
+     */
+    public void resetPose(double timestampSeconds, Pose2d newPose) {
+        history.clear();
+        x = newPose.getX();
+        y = newPose.getY();
+        theta = newPose.getRotation().getRadians();
+        pose = newPose;
+        history.add(timestampSeconds, x, y, theta);
+    }
+
+    /**
+     * Takes a measurement from a past time as our pose outright, keeping
+     * everything we've driven since it was taken; if it's outside our
+     * history, we start over from it instead
+     */
+    public void seedPose(double timestampSeconds, double measuredX, double measuredY, double measuredTheta) {
+        if (!addVisionMeasurement(timestampSeconds, measuredX, measuredY, measuredTheta, 1.0, 1.0)) {
+            resetPose(timestampSeconds, new Pose2d(measuredX, measuredY, new Rotation2d(measuredTheta)));
+        }
+    }
+
+    /**
+     * Advances the estimate by a robot-relative displacement measured by
+     * odometry since the previous update
+     */
+    public void addOdometry(double timestampSeconds, double dx, double dy, double dtheta) {
+        // rotate into the field frame using the heading halfway through the move
+        double heading = theta + dtheta / 2.0;
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        x += dx * cos - dy * sin;
+        y += dx * sin + dy * cos;
+        theta += dtheta;
+        pose = null;
+        history.add(timestampSeconds, x, y, theta);
+    }
+
+    /**
+     * Applies a vision estimate, weighting it by its standard deviations
+     * (meters and radians) against our own
+     */
+    public boolean addVisionMeasurement(PoseEstimate estimate,
+                                        double measurementTranslationStdDev,
+                                        double measurementRotationStdDev) {
+        return addVisionMeasurement(estimate.timestampSeconds,
+                estimate.x,
+                estimate.y,
+                Math.toRadians(estimate.yawDegrees),
+                gain(translationStdDev, measurementTranslationStdDev),
+                gain(rotationStdDev, measurementRotationStdDev));
+    }
+
+    /**
+     * @return the fraction of the way to move towards a measurement, given our
+     * uncertainty and the measurement's (an infinite measurement standard
+     * deviation gives 0)
+     */
+    public static double gain(double stateStdDev, double measurementStdDev) {
+        double q = stateStdDev * stateStdDev;
+        double r = measurementStdDev * measurementStdDev;
+        return Double.isInfinite(r) ? 0.0 : q / (q + r);
+    }
+
+    /**
+     * Applies a field-relative measurement taken at a past time
+     * @return false if the measurement was older (or newer) than our history
+     */
+    public boolean addVisionMeasurement(double timestampSeconds,
+                                        double measuredX, double measuredY, double measuredTheta,
+                                        double translationGain, double rotationGain) {
+
+        if (!history.sample(timestampSeconds, sampled)) {
+            outOfRange++;
+            return false;
+        }
+
+        double thenX = sampled[PoseHistory.X];
+        double thenY = sampled[PoseHistory.Y];
+        double thenTheta = sampled[PoseHistory.THETA];
+
+        // our history isn't wrapped, so compare against the nearest equivalent heading
+        double errorTheta = MathUtil.angleModulus(measuredTheta - thenTheta);
+        double correctedX = thenX + (measuredX - thenX) * translationGain;
+        double correctedY = thenY + (measuredY - thenY) * translationGain;
+        double correctedTheta = thenTheta + errorTheta * rotationGain;
+
+        history.correctFrom(timestampSeconds, thenX, thenY, thenTheta, correctedX, correctedY, correctedTheta);
+        history.latest(sampled);
+        lastCorrection = Math.hypot(sampled[PoseHistory.X] - x, sampled[PoseHistory.Y] - y);
+        x = sampled[PoseHistory.X];
+        y = sampled[PoseHistory.Y];
+        theta = sampled[PoseHistory.THETA];
+        pose = null;
+        applied++;
+        return true;
+    }
+}
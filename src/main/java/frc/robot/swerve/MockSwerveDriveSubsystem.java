@@ -1,49 +1,76 @@
 package frc.robot.swerve;
 
 import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
-import frc.robot.limelight.PoseEstimate;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.logging.EventLog;
+import frc.robot.util.profiling.LoopProfiler;
+import frc.robot.util.telemetry.PublishRate;
 
 public class MockSwerveDriveSubsystem extends SubsystemBase implements SwerveDriveSubsystem {
 
-    private Pose2d lastPose;
+    private final LatencyCompensatedPoseEstimator estimator;
+    private final EventLog odometryLog;
     private ChassisSpeeds lastSpeed;
+    private double lastTimestamp;
+    private final LoopProfiler.Section periodicTimer;
 
     public MockSwerveDriveSubsystem() {
 
-        lastPose = new Pose2d();
+        estimator = new LatencyCompensatedPoseEstimator("MockSwerveDriveSubsystem/Estimator");
+        lastTimestamp = Timer.getFPGATimestamp();
+        estimator.resetPose(lastTimestamp, new Pose2d());
+        odometryLog = new EventLog(ODOMETRY_LOG, ODOMETRY_FIELDS);
         lastSpeed = STOP;
+        periodicTimer = LoopProfiler.section("MockSwerveDriveSubsystem.periodic");
 
         SmarterDashboard.putData("MockSwerveDriveSubsystem", builder -> {
-            builder.addPose("Pose", () -> lastPose);
-            builder.addSpeeds("Speed", () -> lastSpeed);
+            builder.addPose("Pose", estimator::getPose).atRate(PublishRate.FAST);
+            builder.addSpeeds("Speed", () -> lastSpeed).atRate(PublishRate.FAST);
         });
     }
 
     @Override
     public Pose2d getPose() {
-        return lastPose;
+        return estimator.getPose();
     }
 
     @Override
-    public void acceptPoseEstimate(PoseEstimate pose) {
-        lastPose = pose.pose;
+    public ChassisSpeeds getSpeeds() {
+        return lastSpeed;
+    }
+
+    @Override
+    public LatencyCompensatedPoseEstimator getPoseEstimator() {
+        return estimator;
     }
 
     @Override
     public void driveRobotRelative(ChassisSpeeds speeds) {
+        lastSpeed = new ChassisSpeeds(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, speeds.omegaRadiansPerSecond);
     }
 
     @Override
     public void periodic() {
-        if (lastSpeed != STOP) {
-            double x = lastPose.getX() + lastSpeed.vxMetersPerSecond * 0.02;
-            double y = lastPose.getY() + lastSpeed.vyMetersPerSecond * 0.02;
-            double r = lastPose.getRotation().getRadians() + lastSpeed.omegaRadiansPerSecond * 0.02;
-            lastPose = new Pose2d(x, y, Rotation2d.fromDegrees(r));
-        }
+        long start = periodicTimer.start();
+        // we record odometry even when stopped, so vision measurements
+        // always have history to line up against; loops don't always take
+        // exactly 20ms, so we integrate over the time that actually passed
+        double now = Timer.getFPGATimestamp();
+        double dt = now - lastTimestamp;
+        lastTimestamp = now;
+        double dx = lastSpeed.vxMetersPerSecond * dt;
+        double dy = lastSpeed.vyMetersPerSecond * dt;
+        double dtheta = lastSpeed.omegaRadiansPerSecond * dt;
+        estimator.addOdometry(now, dx, dy, dtheta);
+        odometryLog.begin()
+                .add(now).add(dx).add(dy).add(dtheta)
+                .add(lastSpeed.vxMetersPerSecond)
+                .add(lastSpeed.vyMetersPerSecond)
+                .add(lastSpeed.omegaRadiansPerSecond)
+                .end();
+        periodicTimer.stop(start);
     }
 }
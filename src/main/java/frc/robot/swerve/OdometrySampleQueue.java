@@ -0,0 +1,109 @@
+package frc.robot.swerve;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated single-producer/single-consumer queue of odometry samples.
+ * The {@link OdometryThread} copies each sample into the next slot; the robot
+ * thread drains the queue in periodic(). Neither side blocks or allocates -
+ * if the robot thread falls far enough behind to fill the queue, new samples
+ * are dropped and counted.
+ *
+ * Every sample is a timestamp (FPGA seconds) and a fixed number of values.
+ */
+public class OdometrySampleQueue {
+
+    private final int capacity;
+    private final int mask;
+    private final int width;
+    private final double [] timestamps;
+    private final double [] values;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final AtomicLong dropped;
+
+    /**
+     * @param capacity number of samples (rounded up to a power of two)
+     * @param width number of values in each sample
+     */
+    public OdometrySampleQueue(int capacity, int width) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.width = width;
+        this.timestamps = new double[this.capacity];
+        this.values = new double[this.capacity * width];
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.dropped = new AtomicLong();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    // ---- producer side (odometry thread only) ----
+
+    /**
+     * Copies a sample into the queue
+     * @return false if the queue was full and the sample was dropped
+     */
+    public boolean offer(double timestampSeconds, double [] source) {
+        long h = head.get();
+        if (h - tail.get() >= capacity) {
+            dropped.lazySet(dropped.get() + 1);
+            return false;
+        }
+        int slot = (int) (h & mask);
+        System.arraycopy(source, 0, values, slot * width, width);
+        timestamps[slot] = timestampSeconds;
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    // ---- consumer side (robot thread only) ----
+
+    /**
+     * @return the slot of the oldest sample, or -1 if the queue is empty
+     */
+    public int peek() {
+        long t = tail.get();
+        if (t == head.get()) {
+            return -1;
+        }
+        return (int) (t & mask);
+    }
+
+    public double timestamp(int slot) {
+        return timestamps[slot];
+    }
+
+    public double value(int slot, int idx) {
+        return values[slot * width + idx];
+    }
+
+    /**
+     * Copies a sample's values into the supplied array
+     */
+    public void copy(int slot, double [] out) {
+        System.arraycopy(values, slot * width, out, 0, width);
+    }
+
+    /**
+     * Hands the oldest sample's slot back to the producer
+     */
+    public void release() {
+        tail.lazySet(tail.get() + 1);
+    }
+}
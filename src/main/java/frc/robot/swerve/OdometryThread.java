@@ -0,0 +1,201 @@
+package frc.robot.swerve;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.CANBus;
+import com.ctre.phoenix6.StatusCode;
+import com.ctre.phoenix6.StatusSignal;
+import edu.wpi.first.wpilibj.Threads;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Runs swerve odometry faster than the robot loop. The thread blocks until
+ * every module signal and the gyro have fresh values (so on a CAN FD bus,
+ * where the devices publish in sync, all of them come from the same
+ * instant), works out how far the robot moved and turned since the previous
+ * sample, and queues the result for the robot thread, which feeds it to the
+ * pose estimator.
+ *
+ * Each sample is stamped with the FPGA time it was measured: the time it
+ * arrived, less the average latency the signals report. The thread owns the
+ * modules' signals - nothing else should refresh them while it's running.
+ *
+ * Sample values are laid out as follows (n being the number of modules):
+ * <ul>
+ *     <li>0-2: robot-relative displacement since the last sample (dx, dy, dtheta)</li>
+ *     <li>3-5: robot-relative speeds (vx, vy, omega)</li>
+ *     <li>6 to 6+n: wheel speeds</li>
+ *     <li>6+n to 6+2n: wheel angles</li>
+ * </ul>
+ */
+public class OdometryThread {
+
+    public static final double CAN_FD_FREQUENCY = 250.0;
+    public static final double CAN_FREQUENCY = 100.0;
+    public static final int QUEUE_CAPACITY = 64;
+
+    public static final int DX = 0;
+    public static final int DY = 1;
+    public static final int DTHETA = 2;
+    public static final int VX = 3;
+    public static final int VY = 4;
+    public static final int OMEGA = 5;
+    public static final int MODULE_SPEEDS = 6;
+
+    private final SwerveModule [] modules;
+    private final SwerveKinematics kinematics;
+    private final StatusSignal<Double> yaw;
+    private final StatusSignal<Double> yawRate;
+    private final BaseStatusSignal [] signals;
+    private final double frequency;
+    private final OdometrySampleQueue queue;
+    private final double [] sample;
+    private final double [] distances;
+    private final double [] lastDistances;
+    private final double [] speeds;
+    private final double [] angles;
+    private final double [] motion;
+    private double lastYaw;
+    private double pendingDx;
+    private double pendingDy;
+    private double pendingDtheta;
+    private volatile boolean running;
+    private volatile long samples;
+    private volatile long failures;
+    private Thread thread;
+
+    public OdometryThread(String canBus, SwerveModule [] modules, SwerveKinematics kinematics,
+                          StatusSignal<Double> yaw, StatusSignal<Double> yawRate) {
+
+        this.modules = modules;
+        this.kinematics = kinematics;
+        this.yaw = yaw;
+        this.yawRate = yawRate;
+        this.frequency = CANBus.isNetworkFD(canBus) ? CAN_FD_FREQUENCY : CAN_FREQUENCY;
+
+        int count = modules.length;
+        this.signals = new BaseStatusSignal[count * 3 + 2];
+        for (int i=0; i<count; i++) {
+            System.arraycopy(modules[i].getSignals(), 0, signals, i * 3, 3);
+        }
+        this.signals[count * 3] = yaw;
+        this.signals[count * 3 + 1] = yawRate;
+
+        this.queue = new OdometrySampleQueue(QUEUE_CAPACITY, MODULE_SPEEDS + count * 2);
+        this.sample = new double[queue.getWidth()];
+        this.distances = new double[count];
+        this.lastDistances = new double[count];
+        this.speeds = new double[count];
+        this.angles = new double[count];
+        this.motion = new double[3];
+    }
+
+    public double getFrequency() {
+        return frequency;
+    }
+
+    public OdometrySampleQueue getQueue() {
+        return queue;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return how many times we timed out (or failed) waiting for fresh signals
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+
+        BaseStatusSignal.setUpdateFrequencyForAll(frequency, signals);
+
+        // the first sample is only a starting point for the next one
+        BaseStatusSignal.refreshAll(signals);
+        for (int i=0; i<modules.length; i++) {
+            modules[i].update();
+            lastDistances[i] = modules[i].getDistance();
+        }
+        lastYaw = yaw.getValueAsDouble();
+
+        running = true;
+        thread = new Thread(this::run, "OdometryThread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void run() {
+        // odometry is worth more than telemetry or logging if we're short on CPU
+        Threads.setCurrentThreadPriority(true, 1);
+        double timeout = 2.0 / frequency;
+        while (running) {
+            StatusCode status = BaseStatusSignal.waitForAll(timeout, signals);
+            if (!status.isOK()) {
+                failures++;
+                continue;
+            }
+            takeSample();
+        }
+    }
+
+    private void takeSample() {
+
+        double latency = 0.0;
+        for (int i=0; i<signals.length; i++) {
+            latency += signals[i].getTimestamp().getLatency();
+        }
+        double timestamp = Timer.getFPGATimestamp() - latency / signals.length;
+
+        int count = modules.length;
+        for (int i=0; i<count; i++) {
+            modules[i].update();
+            double distance = modules[i].getDistance();
+            distances[i] = distance - lastDistances[i];
+            lastDistances[i] = distance;
+            speeds[i] = modules[i].getSpeed();
+            angles[i] = modules[i].getAngle();
+        }
+
+        // the wheels tell us how far we moved, and the gyro how far we turned
+        // (it's much better at that than the wheels are); if the last sample
+        // didn't fit in the queue, its motion is carried into this one so the
+        // estimator doesn't lose it
+        double currentYaw = yaw.getValueAsDouble();
+        kinematics.toChassisMotion(distances, angles, motion);
+        pendingDx += motion[0];
+        pendingDy += motion[1];
+        pendingDtheta += Math.toRadians(currentYaw - lastYaw);
+        lastYaw = currentYaw;
+        sample[DX] = pendingDx;
+        sample[DY] = pendingDy;
+        sample[DTHETA] = pendingDtheta;
+
+        kinematics.toChassisMotion(speeds, angles, motion);
+        sample[VX] = motion[0];
+        sample[VY] = motion[1];
+        sample[OMEGA] = Math.toRadians(yawRate.getValueAsDouble());
+
+        System.arraycopy(speeds, 0, sample, MODULE_SPEEDS, count);
+        System.arraycopy(angles, 0, sample, MODULE_SPEEDS + count, count);
+
+        if (queue.offer(timestamp, sample)) {
+            pendingDx = 0.0;
+            pendingDy = 0.0;
+            pendingDtheta = 0.0;
+        }
+        samples++;
+    }
+}
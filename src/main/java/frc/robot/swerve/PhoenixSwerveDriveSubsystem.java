@@ -0,0 +1,199 @@
+package frc.robot.swerve;
+
+import com.ctre.phoenix6.hardware.Pigeon2;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.SmarterDashboard;
+import frc.robot.util.logging.EventLog;
+import frc.robot.util.profiling.LoopProfiler;
+import frc.robot.util.telemetry.PublishRate;
+
+/**
+ * Swerve drive on four {@link SwerveModule}s and a Pigeon2. Odometry runs on
+ * its own {@link OdometryThread}, faster than the robot loop; every loop we
+ * feed the samples it has queued since last time into the
+ * {@link LatencyCompensatedPoseEstimator} (each at its own timestamp, so
+ * vision measurements line up against a finer history), and then turn the
+ * most recently requested chassis speeds into module commands.
+ *
+ * This is the busiest loop on the robot, so it works entirely on arrays
+ * allocated up front (see {@link SwerveKinematics}) and on ChassisSpeeds
+ * objects that are updated in place; nothing is allocated per loop.
+ */
+public class PhoenixSwerveDriveSubsystem extends SubsystemBase implements SwerveDriveSubsystem {
+
+    // Set these based on the hardware configuration of the robot
+    public static final String CAN_BUS = "rio";
+    public static final int PIGEON_ID = 13;
+    public static final double WHEELBASE = 0.57;
+    public static final double TRACK_WIDTH = 0.57;
+
+    // Safety limits
+    public static final double MAX_SPEED = 4.5;
+
+    // Odometry
+    public static final int ESTIMATOR_HISTORY_SIZE = 1024;
+
+    // Module order is front left, front right, back left, back right
+    private static final String [] NAMES = { "FrontLeft", "FrontRight", "BackLeft", "BackRight" };
+    private static final int [] DRIVE_IDS = { 1, 4, 7, 10 };
+    private static final int [] STEER_IDS = { 2, 5, 8, 11 };
+    private static final int [] ENCODER_IDS = { 3, 6, 9, 12 };
+    private static final double [] ENCODER_OFFSETS = { 0.0, 0.0, 0.0, 0.0 };
+
+    private final SwerveModule [] modules;
+    private final SwerveKinematics kinematics;
+    private final Pigeon2 pigeon;
+    private final OdometryThread odometry;
+    private final OdometrySampleQueue samples;
+    private final LatencyCompensatedPoseEstimator estimator;
+    private final EventLog odometryLog;
+    private final LoopProfiler.Section periodicTimer;
+    private final ChassisSpeeds requestedSpeeds;
+    private final ChassisSpeeds measuredSpeeds;
+    private final double [] targetSpeeds;
+    private final double [] targetAngles;
+    private final double [] currentSpeeds;
+    private final double [] currentAngles;
+    private double maxSpeed;
+    private double lastSampleTimestamp;
+    private int samplesLastLoop;
+
+    public PhoenixSwerveDriveSubsystem() {
+
+        int count = NAMES.length;
+        modules = new SwerveModule[count];
+        for (int i=0; i<count; i++) {
+            modules[i] = new SwerveModule("PhoenixSwerveDriveSubsystem/" + NAMES[i], CAN_BUS,
+                    DRIVE_IDS[i], STEER_IDS[i], ENCODER_IDS[i], ENCODER_OFFSETS[i]);
+        }
+        kinematics = new SwerveKinematics(
+                new double[] { WHEELBASE / 2.0, WHEELBASE / 2.0, -WHEELBASE / 2.0, -WHEELBASE / 2.0 },
+                new double[] { TRACK_WIDTH / 2.0, -TRACK_WIDTH / 2.0, TRACK_WIDTH / 2.0, -TRACK_WIDTH / 2.0 });
+
+        pigeon = new Pigeon2(PIGEON_ID, CAN_BUS);
+
+        requestedSpeeds = new ChassisSpeeds();
+        measuredSpeeds = new ChassisSpeeds();
+        targetSpeeds = new double[count];
+        targetAngles = new double[count];
+        currentSpeeds = new double[count];
+        currentAngles = new double[count];
+        maxSpeed = MAX_SPEED;
+        lastSampleTimestamp = Double.NaN;
+
+        periodicTimer = LoopProfiler.section("PhoenixSwerveDriveSubsystem.periodic");
+
+        // odometry samples come in a few times per loop, so we need a longer
+        // history to look as far back as the default estimator does at 50Hz
+        estimator = new LatencyCompensatedPoseEstimator("PhoenixSwerveDriveSubsystem/Estimator", ESTIMATOR_HISTORY_SIZE);
+        estimator.resetPose(Timer.getFPGATimestamp(), new Pose2d());
+        odometryLog = new EventLog(ODOMETRY_LOG, ODOMETRY_FIELDS);
+
+        odometry = new OdometryThread(CAN_BUS, modules, kinematics, pigeon.getYaw(), pigeon.getAngularVelocityZWorld());
+        samples = odometry.getQueue();
+        odometry.start();
+        for (int i=0; i<count; i++) {
+            currentAngles[i] = modules[i].getAngle();
+            targetAngles[i] = currentAngles[i];
+        }
+
+        SmarterDashboard.putData("PhoenixSwerveDriveSubsystem", builder -> {
+            builder.addPose("Pose", estimator::getPose).atRate(PublishRate.FAST);
+            builder.addSpeeds("MeasuredSpeed", () -> measuredSpeeds).atRate(PublishRate.FAST);
+            builder.addSpeeds("RequestedSpeed", () -> requestedSpeeds).atRate(PublishRate.FAST);
+            builder.addDoubleArray("CurrentModuleSpeeds", () -> currentSpeeds).atRate(PublishRate.NORMAL);
+            builder.addDoubleArray("CurrentModuleAngles", () -> currentAngles).atRate(PublishRate.NORMAL);
+            builder.addDoubleArray("TargetModuleSpeeds", () -> targetSpeeds).atRate(PublishRate.NORMAL);
+            builder.addDoubleArray("TargetModuleAngles", () -> targetAngles).atRate(PublishRate.NORMAL);
+            builder.addDouble("MaxSpeed", () -> maxSpeed, val -> maxSpeed = val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("OdometryHz", odometry::getFrequency).atRate(PublishRate.SLOW);
+            builder.addDouble("OdometrySamples", odometry::getSamples).atRate(PublishRate.SLOW);
+            builder.addDouble("OdometryFailures", odometry::getFailures).atRate(PublishRate.SLOW);
+            builder.addDouble("OdometryDropped", samples::getDropped).atRate(PublishRate.SLOW);
+            builder.addDouble("SamplesLastLoop", () -> samplesLastLoop).atRate(PublishRate.NORMAL);
+            builder.addDouble("LastSampleTimestamp", () -> lastSampleTimestamp).atRate(PublishRate.NORMAL);
+        });
+    }
+
+    @Override
+    public Pose2d getPose() {
+        return estimator.getPose();
+    }
+
+    /**
+     * @return robot-relative speeds measured from the modules and the gyro
+     * (updated in place every loop - copy it if you need to keep it)
+     */
+    @Override
+    public ChassisSpeeds getSpeeds() {
+        return measuredSpeeds;
+    }
+
+    @Override
+    public LatencyCompensatedPoseEstimator getPoseEstimator() {
+        return estimator;
+    }
+
+    /**
+     * Remembers the supplied speeds (callers are free to reuse the object);
+     * they're sent to the modules in the next periodic()
+     */
+    @Override
+    public void driveRobotRelative(ChassisSpeeds speeds) {
+        requestedSpeeds.vxMetersPerSecond = speeds.vxMetersPerSecond;
+        requestedSpeeds.vyMetersPerSecond = speeds.vyMetersPerSecond;
+        requestedSpeeds.omegaRadiansPerSecond = speeds.omegaRadiansPerSecond;
+    }
+
+    @Override
+    public void periodic() {
+
+        long start = periodicTimer.start();
+
+        // odometry: everything the thread measured since last loop, in order;
+        // the newest sample also gives us our current speeds and wheel angles
+        int count = modules.length;
+        samplesLastLoop = 0;
+        for (int slot = samples.peek(); slot >= 0; slot = samples.peek()) {
+            double timestamp = samples.timestamp(slot);
+            double dx = samples.value(slot, OdometryThread.DX);
+            double dy = samples.value(slot, OdometryThread.DY);
+            double dtheta = samples.value(slot, OdometryThread.DTHETA);
+            estimator.addOdometry(timestamp, dx, dy, dtheta);
+            measuredSpeeds.vxMetersPerSecond = samples.value(slot, OdometryThread.VX);
+            measuredSpeeds.vyMetersPerSecond = samples.value(slot, OdometryThread.VY);
+            measuredSpeeds.omegaRadiansPerSecond = samples.value(slot, OdometryThread.OMEGA);
+            odometryLog.begin()
+                    .add(timestamp).add(dx).add(dy).add(dtheta)
+                    .add(measuredSpeeds.vxMetersPerSecond)
+                    .add(measuredSpeeds.vyMetersPerSecond)
+                    .add(measuredSpeeds.omegaRadiansPerSecond)
+                    .end();
+            for (int i=0; i<count; i++) {
+                currentSpeeds[i] = samples.value(slot, OdometryThread.MODULE_SPEEDS + i);
+                currentAngles[i] = samples.value(slot, OdometryThread.MODULE_SPEEDS + count + i);
+            }
+            lastSampleTimestamp = timestamp;
+            samplesLastLoop++;
+            samples.release();
+        }
+
+        // output: requested speeds to module states, scaled down if any
+        // module can't keep up, then optimized and sent by each module
+        kinematics.toModuleStates(
+                requestedSpeeds.vxMetersPerSecond,
+                requestedSpeeds.vyMetersPerSecond,
+                requestedSpeeds.omegaRadiansPerSecond,
+                targetSpeeds,
+                targetAngles);
+        SwerveKinematics.desaturate(targetSpeeds, maxSpeed);
+        for (int i=0; i<modules.length; i++) {
+            modules[i].setDesired(targetSpeeds[i], targetAngles[i], currentAngles[i]);
+        }
+
+        periodicTimer.stop(start);
+    }
+}
@@ -0,0 +1,162 @@
+package frc.robot.swerve;
+
+/**
+ * Bounded history of timestamped field poses, stored in parallel primitive
+ * arrays so that adding a sample never allocates. Samples must be added in
+ * timestamp order; once the ring is full the oldest sample is overwritten.
+ *
+ * Poses are (x, y, theta) with theta in radians and not wrapped, so that
+ * interpolating between two samples never goes "the long way around".
+ */
+public class PoseHistory {
+
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int THETA = 2;
+
+    private final int capacity;
+    private final double [] timestamps;
+    private final double [] xs;
+    private final double [] ys;
+    private final double [] thetas;
+    private int newest;
+    private int size;
+
+    public PoseHistory(int capacity) {
+        this.capacity = capacity;
+        this.timestamps = new double[capacity];
+        this.xs = new double[capacity];
+        this.ys = new double[capacity];
+        this.thetas = new double[capacity];
+        this.newest = -1;
+        this.size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        newest = -1;
+        size = 0;
+    }
+
+    public double getOldestTimestamp() {
+        return size == 0 ? Double.NaN : timestamps[index(0)];
+    }
+
+    public double getNewestTimestamp() {
+        return size == 0 ? Double.NaN : timestamps[newest];
+    }
+
+    public void add(double timestampSeconds, double x, double y, double theta) {
+        newest = (newest + 1) % capacity;
+        timestamps[newest] = timestampSeconds;
+        xs[newest] = x;
+        ys[newest] = y;
+        thetas[newest] = theta;
+        if (size < capacity) {
+            size++;
+        }
+    }
+
+    /**
+     * Interpolates the pose at the supplied time into out (x, y, theta)
+     * @return false if the time is outside the span of the history
+     */
+    public boolean sample(double timestampSeconds, double [] out) {
+        int after = firstAfter(timestampSeconds);
+        if (after == 0) {
+            return false;
+        }
+        if (after == size) {
+            if (timestamps[newest] == timestampSeconds) {
+                copy(newest, out);
+                return true;
+            }
+            return false;
+        }
+        int a = index(after - 1);
+        int b = index(after);
+        double span = timestamps[b] - timestamps[a];
+        double t = span <= 0.0 ? 1.0 : (timestampSeconds - timestamps[a]) / span;
+        out[X] = xs[a] + (xs[b] - xs[a]) * t;
+        out[Y] = ys[a] + (ys[b] - ys[a]) * t;
+        out[THETA] = thetas[a] + (thetas[b] - thetas[a]) * t;
+        return true;
+    }
+
+    /**
+     * Moves every sample at or after the supplied time by the rigid transform
+     * that takes (fromX, fromY, fromTheta) to (toX, toY, toTheta) - i.e. each
+     * sample keeps its position relative to the corrected pose.
+     */
+    public void correctFrom(double timestampSeconds,
+                            double fromX, double fromY, double fromTheta,
+                            double toX, double toY, double toTheta) {
+        double dtheta = toTheta - fromTheta;
+        double cos = Math.cos(dtheta);
+        double sin = Math.sin(dtheta);
+        for (int i=firstAtOrAfter(timestampSeconds); i<size; i++) {
+            int idx = index(i);
+            double dx = xs[idx] - fromX;
+            double dy = ys[idx] - fromY;
+            xs[idx] = toX + dx * cos - dy * sin;
+            ys[idx] = toY + dx * sin + dy * cos;
+            thetas[idx] += dtheta;
+        }
+    }
+
+    /**
+     * Copies the newest sample into out (x, y, theta)
+     * @return false if the history is empty
+     */
+    public boolean latest(double [] out) {
+        if (size == 0) {
+            return false;
+        }
+        copy(newest, out);
+        return true;
+    }
+
+    // maps an age-order position (0 = oldest) to an array index
+    private int index(int position) {
+        return (newest - size + 1 + position + capacity) % capacity;
+    }
+
+    // age-order position of the first sample strictly newer than the time
+    private int firstAfter(double timestampSeconds) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[index(mid)] <= timestampSeconds) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // age-order position of the first sample at or newer than the time
+    private int firstAtOrAfter(double timestampSeconds) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[index(mid)] < timestampSeconds) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void copy(int idx, double [] out) {
+        out[X] = xs[idx];
+        out[Y] = ys[idx];
+        out[THETA] = thetas[idx];
+    }
+}
@@ -0,0 +1,381 @@
+package frc.robot.swerve;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.SmarterDashboard;
+import frc.robot.util.logging.EventLog;
+import frc.robot.util.profiling.LoopProfiler;
+import frc.robot.util.telemetry.PublishRate;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Physics simulation of the {@link PhoenixSwerveDriveSubsystem} drivetrain.
+ * Each module has a drive and a steering motor modeled as DC motors (voltage
+ * in, torque out, back-EMF slowing them down) closing the same loops the
+ * Talons would, with the same gains, and wheel traction is limited by
+ * friction. The chassis moves however best explains what the wheels are
+ * doing (see {@link SwerveKinematics}).
+ *
+ * Physics always advances in fixed steps of {@link #PHYSICS_DT}, so a run is
+ * deterministic no matter how fast the CPU is. Both motor models are first
+ * order, and each step solves them exactly rather than with Euler, so the
+ * step can be fairly large without the stiff steering loop blowing up.
+ *
+ * There are two ways to drive time forward:
+ * <ul>
+ *     <li>periodic() catches the physics up to a clock (by default the FPGA
+ *     clock, which the simulator lets us pause and step as fast as we like);</li>
+ *     <li>{@link #step(double)} advances a fixed amount right away, for
+ *     running the drivetrain without a robot loop at all.</li>
+ * </ul>
+ *
+ * The pose estimator is fed odometry once per periodic() or step(), like the
+ * real robot's main loop. {@link #getTruePose()} is where the robot actually
+ * is, for simulated cameras and for scoring how well commands did.
+ *
+ * When replaying a recorded match, physics is switched off and the estimator
+ * is fed the odometry the real drivetrain recorded instead (see
+ * {@link #replayOdometry(double[], int)}), so vision is fused against where
+ * the robot really drove.
+ */
+public class SimulatedSwerveDriveSubsystem extends SubsystemBase implements SwerveDriveSubsystem {
+
+    public static final double PHYSICS_DT = 0.001;
+    public static final double MAX_CATCH_UP = 0.1;
+
+    // Physical properties of the robot
+    public static final double MASS = 60.0;
+    public static final double WHEEL_FRICTION = 1.1;
+    public static final double STEER_INERTIA = 0.004;
+    public static final double MAX_VOLTS = 12.0;
+    public static final DCMotor DRIVE_MOTOR = DCMotor.getKrakenX60(1);
+    public static final DCMotor STEER_MOTOR = DCMotor.getKrakenX60(1);
+
+    private static final double GRAVITY = 9.81;
+
+    private final DoubleSupplier clock;
+    private final SwerveKinematics kinematics;
+    private final int count;
+    private final LatencyCompensatedPoseEstimator estimator;
+    private final EventLog odometryLog;
+    private final LoopProfiler.Section periodicTimer;
+    private final ChassisSpeeds requestedSpeeds;
+    private final ChassisSpeeds measuredSpeeds;
+    private final double [] targetSpeeds;
+    private final double [] targetAngles;
+    private final double [] commandedSpeeds;
+    private final double [] commandedAngles;
+    private final double [] wheelSpeeds;
+    private final double [] wheelAngles;
+    private final double [] steerRates;
+    private final double [] motion;
+    private final double driveRate;
+    private final double driveGain;
+    private final double steerRate;
+    private final double steerGain;
+    private final double maxWheelAccel;
+    private double time;
+    private double trueX;
+    private double trueY;
+    private double trueTheta;
+    private Pose2d truePose;
+    private double pendingDx;
+    private double pendingDy;
+    private double pendingDtheta;
+    private long steps;
+    private boolean replaying;
+
+    public SimulatedSwerveDriveSubsystem() {
+        this(Timer::getFPGATimestamp);
+    }
+
+    /**
+     * @param clock the time in seconds that periodic() catches physics up to
+     */
+    public SimulatedSwerveDriveSubsystem(DoubleSupplier clock) {
+
+        this.clock = clock;
+
+        double halfBase = PhoenixSwerveDriveSubsystem.WHEELBASE / 2.0;
+        double halfTrack = PhoenixSwerveDriveSubsystem.TRACK_WIDTH / 2.0;
+        this.kinematics = new SwerveKinematics(
+                new double[] { halfBase, halfBase, -halfBase, -halfBase },
+                new double[] { halfTrack, -halfTrack, halfTrack, -halfTrack });
+        this.count = kinematics.getModuleCount();
+
+        this.requestedSpeeds = new ChassisSpeeds();
+        this.measuredSpeeds = new ChassisSpeeds();
+        this.targetSpeeds = new double[count];
+        this.targetAngles = new double[count];
+        this.commandedSpeeds = new double[count];
+        this.commandedAngles = new double[count];
+        this.wheelSpeeds = new double[count];
+        this.wheelAngles = new double[count];
+        this.steerRates = new double[count];
+        this.motion = new double[3];
+
+        // Both mechanisms follow dv/dt = gain * volts - rate * v: the motor's
+        // torque per volt, less the back-EMF at the current speed. The drive
+        // works against a quarter of the robot's mass (at the wheel, in
+        // meters per second); steering against the module's inertia (in
+        // radians per second).
+        double wheelRadius = SwerveModule.WHEEL_CIRCUMFERENCE / (2.0 * Math.PI);
+        double driveRatio = SwerveModule.DRIVE_GEAR_RATIO;
+        double moduleMass = MASS / count;
+        this.driveGain = DRIVE_MOTOR.KtNMPerAmp * driveRatio
+                / (DRIVE_MOTOR.rOhms * wheelRadius * moduleMass);
+        this.driveRate = DRIVE_MOTOR.KtNMPerAmp * driveRatio * driveRatio
+                / (DRIVE_MOTOR.rOhms * DRIVE_MOTOR.KvRadPerSecPerVolt * wheelRadius * wheelRadius * moduleMass);
+        double steerRatio = SwerveModule.STEER_GEAR_RATIO;
+        this.steerGain = STEER_MOTOR.KtNMPerAmp * steerRatio
+                / (STEER_MOTOR.rOhms * STEER_INERTIA);
+        this.steerRate = STEER_MOTOR.KtNMPerAmp * steerRatio * steerRatio
+                / (STEER_MOTOR.rOhms * STEER_MOTOR.KvRadPerSecPerVolt * STEER_INERTIA);
+        this.maxWheelAccel = WHEEL_FRICTION * GRAVITY;
+
+        this.time = clock.getAsDouble();
+        this.estimator = new LatencyCompensatedPoseEstimator("SimulatedSwerveDriveSubsystem/Estimator");
+        this.periodicTimer = LoopProfiler.section("SimulatedSwerveDriveSubsystem.periodic");
+        this.odometryLog = new EventLog(ODOMETRY_LOG, ODOMETRY_FIELDS);
+        resetPose(new Pose2d());
+
+        SmarterDashboard.putData("SimulatedSwerveDriveSubsystem", builder -> {
+            builder.addPose("Pose", estimator::getPose).atRate(PublishRate.FAST);
+            builder.addPose("TruePose", this::getTruePose).atRate(PublishRate.FAST);
+            builder.addSpeeds("MeasuredSpeed", () -> measuredSpeeds).atRate(PublishRate.FAST);
+            builder.addSpeeds("RequestedSpeed", () -> requestedSpeeds).atRate(PublishRate.FAST);
+            builder.addDoubleArray("CurrentModuleSpeeds", () -> wheelSpeeds).atRate(PublishRate.NORMAL);
+            builder.addDoubleArray("CurrentModuleAngles", () -> wheelAngles).atRate(PublishRate.NORMAL);
+            builder.addDouble("PhysicsSteps", () -> steps).atRate(PublishRate.SLOW);
+        });
+    }
+
+    /**
+     * Puts the robot (and the estimate) at the supplied pose, stopped
+     */
+    public void resetPose(Pose2d pose) {
+        trueX = pose.getX();
+        trueY = pose.getY();
+        trueTheta = pose.getRotation().getRadians();
+        truePose = pose;
+        pendingDx = 0.0;
+        pendingDy = 0.0;
+        pendingDtheta = 0.0;
+        for (int i=0; i<count; i++) {
+            wheelSpeeds[i] = 0.0;
+            steerRates[i] = 0.0;
+        }
+        measuredSpeeds.vxMetersPerSecond = 0.0;
+        measuredSpeeds.vyMetersPerSecond = 0.0;
+        measuredSpeeds.omegaRadiansPerSecond = 0.0;
+        estimator.resetPose(time, pose);
+    }
+
+    /**
+     * Stops simulating; from now on the estimator only moves when it's handed
+     * recorded odometry
+     */
+    public void startReplay() {
+        replaying = true;
+    }
+
+    /**
+     * Feeds one recorded odometry update to the estimator, with values in the
+     * order they're logged to {@link SwerveDriveSubsystem#ODOMETRY_LOG}
+     * (starting at the supplied offset)
+     */
+    public void replayOdometry(double [] values, int offset) {
+        double timestamp = values[offset];
+        estimator.addOdometry(timestamp, values[offset + 1], values[offset + 2], values[offset + 3]);
+        measuredSpeeds.vxMetersPerSecond = values[offset + 4];
+        measuredSpeeds.vyMetersPerSecond = values[offset + 5];
+        measuredSpeeds.omegaRadiansPerSecond = values[offset + 6];
+        odometryLog.begin();
+        for (int i=0; i<ODOMETRY_FIELDS.length; i++) {
+            odometryLog.add(values[offset + i]);
+        }
+        odometryLog.end();
+        time = timestamp;
+    }
+
+    /**
+     * @return simulated time (seconds)
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return where the robot really is (as opposed to where it thinks it is)
+     */
+    public Pose2d getTruePose() {
+        if (truePose == null) {
+            truePose = new Pose2d(trueX, trueY, new Rotation2d(trueTheta));
+        }
+        return truePose;
+    }
+
+    @Override
+    public Pose2d getPose() {
+        return estimator.getPose();
+    }
+
+    /**
+     * @return robot-relative speeds measured from the wheels (updated in
+     * place - copy it if you need to keep it)
+     */
+    @Override
+    public ChassisSpeeds getSpeeds() {
+        return measuredSpeeds;
+    }
+
+    @Override
+    public LatencyCompensatedPoseEstimator getPoseEstimator() {
+        return estimator;
+    }
+
+    @Override
+    public void driveRobotRelative(ChassisSpeeds speeds) {
+        requestedSpeeds.vxMetersPerSecond = speeds.vxMetersPerSecond;
+        requestedSpeeds.vyMetersPerSecond = speeds.vyMetersPerSecond;
+        requestedSpeeds.omegaRadiansPerSecond = speeds.omegaRadiansPerSecond;
+    }
+
+    @Override
+    public void periodic() {
+        if (replaying) {
+            return;
+        }
+        long start = periodicTimer.start();
+        double now = clock.getAsDouble();
+        if (now - time > MAX_CATCH_UP) {
+            // we were paused or stalled; skip ahead rather than simulating
+            // the whole gap in one loop
+            time = now - MAX_CATCH_UP;
+        }
+        command();
+        while (time + PHYSICS_DT <= now) {
+            advance();
+        }
+        recordOdometry();
+        periodicTimer.stop(start);
+    }
+
+    /**
+     * Sends the latest requested speeds to the modules and advances physics
+     * by the supplied number of seconds (rounded down to a whole number of
+     * physics steps), independent of any clock
+     */
+    public void step(double seconds) {
+        command();
+        long physicsSteps = (long) (seconds / PHYSICS_DT + 1e-9);
+        for (long i=0; i<physicsSteps; i++) {
+            advance();
+        }
+        recordOdometry();
+    }
+
+    // works out module targets the same way the real drivetrain does
+    private void command() {
+        kinematics.toModuleStates(
+                requestedSpeeds.vxMetersPerSecond,
+                requestedSpeeds.vyMetersPerSecond,
+                requestedSpeeds.omegaRadiansPerSecond,
+                targetSpeeds,
+                targetAngles);
+        SwerveKinematics.desaturate(targetSpeeds, PhoenixSwerveDriveSubsystem.MAX_SPEED);
+        for (int i=0; i<count; i++) {
+            double speed = targetSpeeds[i];
+            double angle = targetAngles[i];
+            double error = MathUtil.angleModulus(angle - wheelAngles[i]);
+            if (Math.abs(error) > Math.PI / 2.0) {
+                speed = -speed;
+                angle = MathUtil.angleModulus(angle + Math.PI);
+                error = MathUtil.angleModulus(angle - wheelAngles[i]);
+            }
+            commandedSpeeds[i] = speed * Math.cos(error);
+            commandedAngles[i] = angle;
+        }
+    }
+
+    // one fixed physics step: each motor's onboard loop picks a voltage, the
+    // mechanisms respond, and the chassis moves the way the wheels say
+    private void advance() {
+
+        double dt = PHYSICS_DT;
+        double driveDecay = Math.exp(-driveRate * dt);
+        double steerDecay = Math.exp(-steerRate * dt);
+
+        for (int i=0; i<count; i++) {
+
+            double driveVolts = SwerveModule.DRIVE_KV * commandedSpeeds[i]
+                    + SwerveModule.DRIVE_KP * (commandedSpeeds[i] - wheelSpeeds[i]);
+            driveVolts = MathUtil.clamp(driveVolts, -MAX_VOLTS, MAX_VOLTS);
+            double driveSteady = driveGain * driveVolts / driveRate;
+            double newSpeed = driveSteady + (wheelSpeeds[i] - driveSteady) * driveDecay;
+            double maxChange = maxWheelAccel * dt;
+            wheelSpeeds[i] = MathUtil.clamp(newSpeed, wheelSpeeds[i] - maxChange, wheelSpeeds[i] + maxChange);
+
+            double steerError = MathUtil.angleModulus(commandedAngles[i] - wheelAngles[i]) / (2.0 * Math.PI);
+            double steerVolts = MathUtil.clamp(SwerveModule.STEER_KP * steerError, -MAX_VOLTS, MAX_VOLTS);
+            double steerSteady = steerGain * steerVolts / steerRate;
+            double newRate = steerSteady + (steerRates[i] - steerSteady) * steerDecay;
+            wheelAngles[i] = MathUtil.angleModulus(wheelAngles[i] + (steerRates[i] + newRate) / 2.0 * dt);
+            steerRates[i] = newRate;
+        }
+
+        kinematics.toChassisMotion(wheelSpeeds, wheelAngles, motion);
+        double dx = motion[0] * dt;
+        double dy = motion[1] * dt;
+        double dtheta = motion[2] * dt;
+
+        double heading = trueTheta + dtheta / 2.0;
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        trueX += dx * cos - dy * sin;
+        trueY += dx * sin + dy * cos;
+        trueTheta += dtheta;
+        truePose = null;
+
+        // the wheels don't slip in this model, so odometry sees exactly what
+        // happened; the estimator drifts from the truth only via vision
+        cos = Math.cos(pendingDtheta + dtheta / 2.0);
+        sin = Math.sin(pendingDtheta + dtheta / 2.0);
+        pendingDx += dx * cos - dy * sin;
+        pendingDy += dx * sin + dy * cos;
+        pendingDtheta += dtheta;
+
+        measuredSpeeds.vxMetersPerSecond = motion[0];
+        measuredSpeeds.vyMetersPerSecond = motion[1];
+        measuredSpeeds.omegaRadiansPerSecond = motion[2];
+
+        time += dt;
+        steps++;
+    }
+
+    // hands the motion since the last call to the estimator; we've added it
+    // up relative to the heading at the last call, but the estimator wants
+    // it relative to the heading halfway through
+    private void recordOdometry() {
+        double cos = Math.cos(-pendingDtheta / 2.0);
+        double sin = Math.sin(-pendingDtheta / 2.0);
+        double dx = pendingDx * cos - pendingDy * sin;
+        double dy = pendingDx * sin + pendingDy * cos;
+        estimator.addOdometry(time, dx, dy, pendingDtheta);
+        odometryLog.begin()
+                .add(time).add(dx).add(dy).add(pendingDtheta)
+                .add(measuredSpeeds.vxMetersPerSecond)
+                .add(measuredSpeeds.vyMetersPerSecond)
+                .add(measuredSpeeds.omegaRadiansPerSecond)
+                .end();
+        pendingDx = 0.0;
+        pendingDy = 0.0;
+        pendingDtheta = 0.0;
+    }
+}
@@ -13,9 +13,32 @@ public interface SwerveDriveSubsystem extends Subsystem {
 
     ChassisSpeeds STOP = new ChassisSpeeds();
 
+    // Every odometry update goes to the log, so a match can be replayed with
+    // the drivetrain doing what it really did (see SimulatedSwerveDriveSubsystem)
+    String ODOMETRY_LOG = "SwerveDrive/Odometry";
+    String [] ODOMETRY_FIELDS = { "timestamp", "dx", "dy", "dtheta", "vx", "vy", "omega" };
+
     Pose2d getPose();
 
-    void acceptPoseEstimate(PoseEstimate pose);
+    /**
+     * @return robot-relative speeds we're currently driving at
+     */
+    ChassisSpeeds getSpeeds();
+
+    /**
+     * @return the estimator that fuses odometry with (late) vision measurements
+     */
+    LatencyCompensatedPoseEstimator getPoseEstimator();
+
+    /**
+     * Estimates are reused by the caller, so implementations should copy
+     * anything they need to keep. By default, the estimate is applied at its
+     * capture time by the pose estimator, weighted by the supplied standard
+     * deviations (meters and radians).
+     */
+    default void acceptPoseEstimate(PoseEstimate pose, double translationStdDev, double rotationStdDev) {
+        getPoseEstimator().addVisionMeasurement(pose, translationStdDev, rotationStdDev);
+    }
 
     void driveRobotRelative(ChassisSpeeds speeds);
 
@@ -0,0 +1,117 @@
+package frc.robot.swerve;
+
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Swerve kinematics on plain arrays. WPILib's SwerveDriveKinematics hands
+ * back a new SwerveModuleState[] (and a Rotation2d per module) on every call,
+ * which adds up in the drive loop; this does the same math into arrays the
+ * caller owns, so nothing is allocated after construction.
+ *
+ * Module speeds are in meters per second and angles in radians, in the same
+ * order as the module locations supplied to the constructor.
+ */
+public class SwerveKinematics {
+
+    // below this speed a module's direction is meaningless, so we leave it alone
+    public static final double MIN_SPEED = 1e-6;
+
+    private final int count;
+    private final double [] moduleX;
+    private final double [] moduleY;
+    private final double [][] inverse;
+
+    /**
+     * @param moduleX forward location of each module relative to the center of the robot (meters)
+     * @param moduleY leftward location of each module relative to the center of the robot (meters)
+     */
+    public SwerveKinematics(double [] moduleX, double [] moduleY) {
+
+        if (moduleX.length != moduleY.length || moduleX.length < 2) {
+            throw new IllegalArgumentException("need matching locations for at least two modules");
+        }
+
+        this.count = moduleX.length;
+        this.moduleX = moduleX.clone();
+        this.moduleY = moduleY.clone();
+
+        // each module contributes two rows to (vx, vy, omega) -> module
+        // velocity components; we solve the other direction (forward
+        // kinematics) with the least-squares inverse, worked out once here
+        SimpleMatrix forward = new SimpleMatrix(count * 2, 3);
+        for (int i=0; i<count; i++) {
+            forward.set(i * 2, 0, 1.0);
+            forward.set(i * 2, 2, -moduleY[i]);
+            forward.set(i * 2 + 1, 1, 1.0);
+            forward.set(i * 2 + 1, 2, moduleX[i]);
+        }
+        SimpleMatrix pseudoInverse = forward.pseudoInverse();
+        this.inverse = new double[3][count * 2];
+        for (int r=0; r<3; r++) {
+            for (int c=0; c<count * 2; c++) {
+                inverse[r][c] = pseudoInverse.get(r, c);
+            }
+        }
+    }
+
+    public int getModuleCount() {
+        return count;
+    }
+
+    /**
+     * Works out the speed and direction of every module for the supplied
+     * robot-relative chassis speeds. If a module isn't moving, its angle is
+     * left as it was, so modules don't snap back to zero when we stop.
+     */
+    public void toModuleStates(double vx, double vy, double omega, double [] speeds, double [] angles) {
+        for (int i=0; i<count; i++) {
+            double mvx = vx - omega * moduleY[i];
+            double mvy = vy + omega * moduleX[i];
+            double speed = Math.hypot(mvx, mvy);
+            speeds[i] = speed;
+            if (speed > MIN_SPEED) {
+                angles[i] = Math.atan2(mvy, mvx);
+            }
+        }
+    }
+
+    /**
+     * Works out the robot-relative motion (vx, vy, omega) that best explains
+     * the supplied module motion. Works for speeds (meters per second in,
+     * meters and radians per second out) or for distances travelled since the
+     * previous update (meters in, meters and radians out).
+     */
+    public void toChassisMotion(double [] amounts, double [] angles, double [] out) {
+        double vx = 0.0;
+        double vy = 0.0;
+        double omega = 0.0;
+        for (int i=0; i<count; i++) {
+            double mvx = amounts[i] * Math.cos(angles[i]);
+            double mvy = amounts[i] * Math.sin(angles[i]);
+            vx += inverse[0][i * 2] * mvx + inverse[0][i * 2 + 1] * mvy;
+            vy += inverse[1][i * 2] * mvx + inverse[1][i * 2 + 1] * mvy;
+            omega += inverse[2][i * 2] * mvx + inverse[2][i * 2 + 1] * mvy;
+        }
+        out[0] = vx;
+        out[1] = vy;
+        out[2] = omega;
+    }
+
+    /**
+     * If any module is being asked to go faster than it can, scales every
+     * module down by the same amount so the robot still moves in the
+     * intended direction
+     */
+    public static void desaturate(double [] speeds, double maxSpeed) {
+        double fastest = 0.0;
+        for (int i=0; i<speeds.length; i++) {
+            fastest = Math.max(fastest, Math.abs(speeds[i]));
+        }
+        if (fastest > maxSpeed) {
+            double scale = maxSpeed / fastest;
+            for (int i=0; i<speeds.length; i++) {
+                speeds[i] *= scale;
+            }
+        }
+    }
+}
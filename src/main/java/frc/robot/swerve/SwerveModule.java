@@ -0,0 +1,189 @@
+package frc.robot.swerve;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.configs.CANcoderConfiguration;
+import com.ctre.phoenix6.configs.TalonFXConfiguration;
+import com.ctre.phoenix6.controls.PositionVoltage;
+import com.ctre.phoenix6.controls.VelocityVoltage;
+import com.ctre.phoenix6.hardware.CANcoder;
+import com.ctre.phoenix6.hardware.TalonFX;
+import com.ctre.phoenix6.signals.AbsoluteSensorRangeValue;
+import com.ctre.phoenix6.signals.FeedbackSensorSourceValue;
+import com.ctre.phoenix6.signals.InvertedValue;
+import com.ctre.phoenix6.signals.NeutralModeValue;
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * One swerve module: a Kraken/Falcon driving the wheel, another steering it,
+ * and a CANcoder on the steering axis. The drive motor's sensor ratio folds in
+ * the gearing and the wheel size, so its position and velocity are in meters
+ * and meters per second; the steering motor closes its loop on the CANcoder,
+ * in rotations of the module, with continuous wrap.
+ *
+ * Control requests are created once and updated in place, and signals are
+ * read as primitives, so nothing here allocates once the module is running.
+ * Signals are refreshed by the owner (all modules at once, see
+ * {@link #getSignals()}) before {@link #update()} is called; that may happen
+ * on another thread (see {@link OdometryThread}), so commands take the
+ * current wheel angle as an argument instead of reading it from here.
+ */
+public class SwerveModule {
+
+    // Set these based on the hardware configuration of the robot (these are
+    // for an SDS MK4i with L2 gearing)
+    public static final double DRIVE_GEAR_RATIO = 6.75;
+    public static final double STEER_GEAR_RATIO = 150.0 / 7.0;
+    public static final double WHEEL_CIRCUMFERENCE = Math.PI * 0.1016;
+    public static final boolean STEER_INVERTED = true;
+
+    // Safety limits
+    public static final double DRIVE_AMPS = 60.0;
+    public static final double STEER_AMPS = 30.0;
+
+    // Tuning parameters (drive in volts per meter per second, steer in volts
+    // per rotation of the module)
+    public static final double DRIVE_KP = 0.1;
+    public static final double DRIVE_KV = 2.3;
+    public static final double STEER_KP = 50.0;
+
+    private final String name;
+    private final TalonFX driveMotor;
+    private final TalonFX steerMotor;
+    private final CANcoder encoder;
+    private final StatusSignal<Double> drivePosition;
+    private final StatusSignal<Double> driveVelocity;
+    private final StatusSignal<Double> steerPosition;
+    private final VelocityVoltage driveRequest;
+    private final PositionVoltage steerRequest;
+    private final BaseStatusSignal [] signals;
+    private double distance;
+    private double speed;
+    private double angle;
+    private double targetSpeed;
+    private double targetAngle;
+
+    /**
+     * @param encoderOffset reading of the CANcoder (in rotations) when the
+     *                      module is pointed straight ahead
+     */
+    public SwerveModule(String name, String canBus, int driveId, int steerId, int encoderId, double encoderOffset) {
+
+        this.name = name;
+
+        encoder = new CANcoder(encoderId, canBus);
+        CANcoderConfiguration encoderConfig = new CANcoderConfiguration();
+        encoderConfig.MagnetSensor.MagnetOffset = -encoderOffset;
+        encoderConfig.MagnetSensor.AbsoluteSensorRange = AbsoluteSensorRangeValue.Signed_PlusMinusHalf;
+        encoder.getConfigurator().apply(encoderConfig);
+
+        driveMotor = new TalonFX(driveId, canBus);
+        TalonFXConfiguration driveConfig = new TalonFXConfiguration();
+        driveConfig.MotorOutput.NeutralMode = NeutralModeValue.Brake;
+        driveConfig.CurrentLimits.SupplyCurrentLimit = DRIVE_AMPS;
+        driveConfig.CurrentLimits.SupplyCurrentLimitEnable = true;
+        driveConfig.Feedback.SensorToMechanismRatio = DRIVE_GEAR_RATIO / WHEEL_CIRCUMFERENCE;
+        driveConfig.Slot0.kP = DRIVE_KP;
+        driveConfig.Slot0.kV = DRIVE_KV;
+        driveMotor.getConfigurator().apply(driveConfig);
+
+        steerMotor = new TalonFX(steerId, canBus);
+        TalonFXConfiguration steerConfig = new TalonFXConfiguration();
+        steerConfig.MotorOutput.NeutralMode = NeutralModeValue.Brake;
+        steerConfig.MotorOutput.Inverted = STEER_INVERTED
+                ? InvertedValue.Clockwise_Positive
+                : InvertedValue.CounterClockwise_Positive;
+        steerConfig.CurrentLimits.SupplyCurrentLimit = STEER_AMPS;
+        steerConfig.CurrentLimits.SupplyCurrentLimitEnable = true;
+        steerConfig.Feedback.FeedbackRemoteSensorID = encoderId;
+        steerConfig.Feedback.FeedbackSensorSource = FeedbackSensorSourceValue.RemoteCANcoder;
+        steerConfig.Feedback.RotorToSensorRatio = STEER_GEAR_RATIO;
+        steerConfig.ClosedLoopGeneral.ContinuousWrap = true;
+        steerConfig.Slot0.kP = STEER_KP;
+        steerMotor.getConfigurator().apply(steerConfig);
+
+        drivePosition = driveMotor.getPosition();
+        driveVelocity = driveMotor.getVelocity();
+        steerPosition = encoder.getAbsolutePosition();
+        signals = new BaseStatusSignal[] { drivePosition, driveVelocity, steerPosition };
+
+        driveRequest = new VelocityVoltage(0.0).withSlot(0);
+        steerRequest = new PositionVoltage(0.0).withSlot(0);
+
+        targetSpeed = 0.0;
+        targetAngle = 0.0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the signals this module reads; refresh them before calling
+     * {@link #update()}
+     */
+    public BaseStatusSignal [] getSignals() {
+        return signals;
+    }
+
+    /**
+     * @return total distance driven by the wheel (meters)
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return current wheel speed (meters per second)
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return current direction of the wheel (radians, counter-clockwise from forward)
+     */
+    public double getAngle() {
+        return angle;
+    }
+
+    public double getTargetSpeed() {
+        return targetSpeed;
+    }
+
+    public double getTargetAngle() {
+        return targetAngle;
+    }
+
+    /**
+     * Copies the latest (already refreshed) signal values into our fields
+     */
+    public void update() {
+        distance = drivePosition.getValueAsDouble();
+        speed = driveVelocity.getValueAsDouble();
+        angle = steerPosition.getValueAsDouble() * 2.0 * Math.PI;
+    }
+
+    /**
+     * Points the wheel at the supplied angle and drives it at the supplied
+     * speed, given the direction it's pointing now. If that means turning more
+     * than 90 degrees, we turn the other way and drive backwards instead; and
+     * we scale the speed down while the wheel is still pointing the wrong
+     * way, so it doesn't scrub sideways.
+     */
+    public void setDesired(double speedMetersPerSecond, double angleRadians, double currentAngle) {
+
+        double error = MathUtil.angleModulus(angleRadians - currentAngle);
+        if (Math.abs(error) > Math.PI / 2.0) {
+            speedMetersPerSecond = -speedMetersPerSecond;
+            angleRadians = MathUtil.angleModulus(angleRadians + Math.PI);
+            error = MathUtil.angleModulus(angleRadians - currentAngle);
+        }
+        speedMetersPerSecond *= Math.cos(error);
+
+        targetSpeed = speedMetersPerSecond;
+        targetAngle = angleRadians;
+        driveMotor.setControl(driveRequest.withVelocity(speedMetersPerSecond));
+        steerMotor.setControl(steerRequest.withPosition(angleRadians / (2.0 * Math.PI)));
+    }
+}
@@ -0,0 +1,159 @@
+package frc.robot.util;
+
+import com.revrobotics.CANSparkBase;
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.SparkPIDController;
+import frc.robot.util.telemetry.PublishRate;
+
+/**
+ * All writes to a {@link CANSparkMax} go through one of these. A write that
+ * doesn't change anything (same control type and slot, value and feedforward
+ * within tolerance) is suppressed, except that unchanged setpoints are re-sent
+ * every {@link #KEEPALIVE_LOOPS} loops in case the controller was reset.
+ *
+ * Setpoint writes also share a per-loop budget across all gateways. When the
+ * budget is used up, further writes are deferred - since our subsystems issue
+ * their setpoint every loop, a deferred write simply goes out next loop.
+ * Idle mode changes are rare and always go out immediately.
+ *
+ * Call {@link #beginLoop()} at the start of every loop.
+ */
+public class MotorOutputGateway {
+
+    public static final double DEFAULT_VALUE_TOLERANCE = 1e-4;
+    public static final double DEFAULT_FEEDFORWARD_TOLERANCE = 1e-3;
+    public static final int DEFAULT_WRITE_BUDGET = 16;
+    public static final int KEEPALIVE_LOOPS = 25;
+
+    private static int writeBudget = DEFAULT_WRITE_BUDGET;
+    private static int writesThisLoop = 0;
+    private static int writesLastLoop = 0;
+    private static long loop = 0;
+    private static long totalSent = 0;
+    private static long totalSuppressed = 0;
+    private static long totalDeferred = 0;
+
+    static {
+        SmarterDashboard.putData("MotorOutputGateway", builder -> {
+            builder.addDouble("WriteBudget", () -> writeBudget, val -> writeBudget = (int) val).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("WritesLastLoop", () -> writesLastLoop).atRate(PublishRate.NORMAL);
+            builder.addDouble("Sent", () -> totalSent).atRate(PublishRate.SLOW);
+            builder.addDouble("Suppressed", () -> totalSuppressed).atRate(PublishRate.SLOW);
+            builder.addDouble("Deferred", () -> totalDeferred).atRate(PublishRate.SLOW);
+        });
+    }
+
+    private final CANSparkMax motor;
+    private final SparkPIDController pid;
+    private final double valueTolerance;
+    private final double feedforwardTolerance;
+    private CANSparkBase.ControlType lastType;
+    private int lastSlot;
+    private double lastValue;
+    private double lastFeedforward;
+    private long lastSentLoop;
+    private CANSparkBase.IdleMode lastIdleMode;
+    private long sent;
+    private long suppressed;
+    private long deferred;
+
+    public MotorOutputGateway(CANSparkMax motor) {
+        this(motor, DEFAULT_VALUE_TOLERANCE, DEFAULT_FEEDFORWARD_TOLERANCE);
+    }
+
+    public MotorOutputGateway(CANSparkMax motor, double valueTolerance, double feedforwardTolerance) {
+        this.motor = motor;
+        this.pid = motor.getPIDController();
+        this.valueTolerance = valueTolerance;
+        this.feedforwardTolerance = feedforwardTolerance;
+        this.lastType = null;
+        this.lastIdleMode = null;
+    }
+
+    public static void setWriteBudget(int budget) {
+        writeBudget = budget;
+    }
+
+    public static void beginLoop() {
+        writesLastLoop = writesThisLoop;
+        writesThisLoop = 0;
+        loop++;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getSuppressed() {
+        return suppressed;
+    }
+
+    public long getDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Open-loop duty cycle output (same as {@link CANSparkMax#set(double)})
+     * @return true if the write actually went out on the bus
+     */
+    public boolean set(double output) {
+        if (shouldSend(CANSparkBase.ControlType.kDutyCycle, 0, output, 0.0)) {
+            motor.set(output);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Closed-loop setpoint (same as {@link SparkPIDController#setReference(double, CANSparkBase.ControlType, int, double)})
+     * @return true if the write actually went out on the bus
+     */
+    public boolean setReference(double value, CANSparkBase.ControlType type, int slot, double arbFeedforward) {
+        if (shouldSend(type, slot, value, arbFeedforward)) {
+            pid.setReference(value, type, slot, arbFeedforward);
+            return true;
+        }
+        return false;
+    }
+
+    public void setIdleMode(CANSparkBase.IdleMode mode) {
+        if (mode == lastIdleMode) {
+            suppressed++;
+            totalSuppressed++;
+            return;
+        }
+        motor.setIdleMode(mode);
+        lastIdleMode = mode;
+        sent++;
+        totalSent++;
+    }
+
+    private boolean shouldSend(CANSparkBase.ControlType type, int slot, double value, double arbFeedforward) {
+
+        boolean unchanged = type == lastType
+                && slot == lastSlot
+                && Math.abs(value - lastValue) <= valueTolerance
+                && Math.abs(arbFeedforward - lastFeedforward) <= feedforwardTolerance;
+        if (unchanged && loop - lastSentLoop < KEEPALIVE_LOOPS) {
+            suppressed++;
+            totalSuppressed++;
+            return false;
+        }
+
+        if (writesThisLoop >= writeBudget) {
+            deferred++;
+            totalDeferred++;
+            return false;
+        }
+
+        lastType = type;
+        lastSlot = slot;
+        lastValue = value;
+        lastFeedforward = arbFeedforward;
+        lastSentLoop = loop;
+        writesThisLoop++;
+        sent++;
+        totalSent++;
+        return true;
+    }
+}
@@ -0,0 +1,61 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+/**
+ * Background thread that polls sensors at a fixed rate (faster than the main
+ * loop if we want), so that slow CAN/JNI reads don't happen on the robot
+ * thread. Each source is handed the sample timestamp and is expected to write
+ * its readings into a {@link SensorSnapshot} that its subsystem reads from
+ * periodic().
+ */
+public class SensorSampler {
+
+    public static final double DEFAULT_PERIOD = 0.005;
+
+    private final CopyOnWriteArrayList<LongConsumer> sources;
+    private final Notifier notifier;
+    private final double periodSeconds;
+
+    public SensorSampler() {
+        this(DEFAULT_PERIOD);
+    }
+
+    public SensorSampler(double periodSeconds) {
+        this.periodSeconds = periodSeconds;
+        this.sources = new CopyOnWriteArrayList<>();
+        this.notifier = new Notifier(this::sampleAll);
+        this.notifier.setName("SensorSampler");
+    }
+
+    public double getPeriodSeconds() {
+        return periodSeconds;
+    }
+
+    /**
+     * @param source called on the sampler thread with the FPGA timestamp
+     *               (micros) of each sample
+     */
+    public void addSource(LongConsumer source) {
+        sources.add(source);
+    }
+
+    public void start() {
+        notifier.startPeriodic(periodSeconds);
+    }
+
+    public void stop() {
+        notifier.stop();
+    }
+
+    private void sampleAll() {
+        long timestamp = RobotController.getFPGATime();
+        for (LongConsumer source : sources) {
+            source.accept(timestamp);
+        }
+    }
+}
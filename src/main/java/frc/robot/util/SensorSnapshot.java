@@ -0,0 +1,75 @@
+package frc.robot.util;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small block of sensor values shared between a sampling thread (the only
+ * writer) and the robot thread, protected by a sequence lock. The writer never
+ * waits for the reader, and the reader never takes a lock - it just retries in
+ * the rare case that it overlapped a write.
+ *
+ * Writer:
+ * <pre>
+ * snapshot.beginWrite(timestamp);
+ * snapshot.set(0, value);
+ * snapshot.endWrite();
+ * </pre>
+ * Reader:
+ * <pre>
+ * long timestamp = snapshot.read(values);
+ * </pre>
+ */
+public class SensorSnapshot {
+
+    private final double [] values;
+    private final AtomicLong sequence;
+    private long timestamp;
+
+    public SensorSnapshot(int size) {
+        this.values = new double[size];
+        this.sequence = new AtomicLong();
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    // ---- writer side ----
+
+    public void beginWrite(long timestampMicros) {
+        sequence.lazySet(sequence.get() + 1);
+        VarHandle.storeStoreFence();
+        timestamp = timestampMicros;
+    }
+
+    public void set(int idx, double value) {
+        values[idx] = value;
+    }
+
+    public void endWrite() {
+        sequence.lazySet(sequence.get() + 1);
+    }
+
+    // ---- reader side ----
+
+    /**
+     * Copies a consistent set of values into the supplied array
+     * @return the timestamp (FPGA micros) at which they were sampled, or 0 if
+     * nothing has been written yet
+     */
+    public long read(double [] out) {
+        while (true) {
+            long before = sequence.get();
+            if ((before & 1L) == 0L) {
+                long sampled = timestamp;
+                System.arraycopy(values, 0, out, 0, values.length);
+                VarHandle.loadLoadFence();
+                if (sequence.get() == before) {
+                    return sampled;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
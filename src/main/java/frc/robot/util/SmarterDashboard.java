@@ -2,19 +2,29 @@ package frc.robot.util;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.util.function.BooleanConsumer;
-import edu.wpi.first.util.sendable.Sendable;
-import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.util.struct.Struct;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.util.telemetry.BooleanProperty;
+import frc.robot.util.telemetry.DoubleArrayProperty;
+import frc.robot.util.telemetry.DoubleProperty;
+import frc.robot.util.telemetry.StringProperty;
+import frc.robot.util.telemetry.StructProperty;
+import frc.robot.util.telemetry.TelemetryEngine;
+import frc.robot.util.telemetry.TelemetryProperty;
+import frc.robot.util.telemetry.TrapezoidStateStruct;
 
-import java.util.Arrays;
 import java.util.function.*;
 
 /**
  * Wrapper for the {@link SmartDashboard} methods that saves a little typing and adds
- * some unit conversions
+ * some unit conversions. Properties added through a {@link DashboardBuilder} are
+ * published by the {@link TelemetryEngine}, which only sends values that changed.
+ * Poses, speeds and profile states are published as WPILib structs (in SI units).
  */
 public class SmarterDashboard {
 
@@ -23,108 +33,92 @@ public class SmarterDashboard {
     }
 
     public static void putData(String name, Consumer<DashboardBuilder> consumer) {
-        SmartDashboard.putData(name, builder -> consumer.accept(new DashboardBuilder(builder)));
+        TelemetryEngine.removeGroup(name);
+        consumer.accept(new DashboardBuilder(name));
     }
 
     public static class DashboardBuilder {
 
-        private final SendableBuilder builder;
+        private static final double FEET_PER_METER = Units.metersToFeet(1.0);
+        private static final double DEGREES_PER_RADIAN = Units.radiansToDegrees(1.0);
+        private static final double ROTATIONS_PER_RADIAN = Units.radiansToRotations(1.0);
 
-        public DashboardBuilder(SendableBuilder builder) {
-            this.builder = builder;
+        private final String group;
+        private final NetworkTable table;
+
+        public DashboardBuilder(String group) {
+            this.group = group;
+            this.table = TelemetryEngine.getTable(group);
+        }
+
+        public TelemetryProperty addDoubleArray(String name, Supplier<double[]> getter) {
+            return TelemetryEngine.register(group, new DoubleArrayProperty(table, name, getter));
+        }
+
+        public TelemetryProperty addDouble(String name, DoubleSupplier getter) {
+            return addDouble(name, getter, null);
+        }
+
+        public TelemetryProperty addDouble(String name, DoubleSupplier getter, DoubleConsumer setter) {
+            return addScaled(name, getter, setter, 1.0);
         }
 
-        public void addDoubleArray(String name, Supplier<double[]> getter) {
-            builder.addDoubleArrayProperty(name, getter, null);
+        // getters and setters work in meters and radians; the dashboard shows
+        // (and edits) the converted value, with or without a setter
+        public TelemetryProperty displayAsFeet(String name, DoubleSupplier getter) {
+            return displayAsFeet(name, getter, null);
         }
 
-        public void addDouble(String name, DoubleSupplier getter) {
-            addDouble(name, getter, null);
+        public TelemetryProperty displayAsFeet(String name, DoubleSupplier getter, DoubleConsumer setter) {
+            return addScaled(name, getter, setter, FEET_PER_METER);
         }
 
-        public void addDouble(String name, DoubleSupplier getter, DoubleConsumer setter) {
-            builder.addDoubleProperty(name, getter, setter);
+        public TelemetryProperty displayAsDegrees(String name, DoubleSupplier getter) {
+            return displayAsDegrees(name, getter, null);
         }
 
-        public void displayAsFeet(String name, DoubleSupplier getter) {
-            addDouble(name, getter, null);
+        public TelemetryProperty displayAsDegrees(String name, DoubleSupplier getter, DoubleConsumer setter) {
+            return addScaled(name, getter, setter, DEGREES_PER_RADIAN);
         }
 
-        public void displayAsFeet(String name, DoubleSupplier getter, DoubleConsumer setter) {
-            DoubleSupplier wrappedGetter = () -> Units.metersToFeet(getter.getAsDouble());
-            DoubleConsumer wrappedSetter = null;
-            if (setter != null) {
-                wrappedSetter = feet -> setter.accept(Units.feetToMeters(feet));
-            }
-            addDouble(name, wrappedGetter, wrappedSetter);
+        public TelemetryProperty displayAsRotations(String name, DoubleSupplier getter) {
+            return displayAsRotations(name, getter, null);
         }
 
-        public void displayAsDegrees(String name, DoubleSupplier getter) {
-            addDouble(name, getter, null);
+        public TelemetryProperty displayAsRotations(String name, DoubleSupplier getter, DoubleConsumer setter) {
+            return addScaled(name, getter, setter, ROTATIONS_PER_RADIAN);
         }
 
-        public void displayAsDegrees(String name, DoubleSupplier getter, DoubleConsumer setter) {
-            DoubleSupplier wrappedGetter = () -> Units.radiansToDegrees(getter.getAsDouble());
-            DoubleConsumer wrappedSetter = null;
-            if (setter != null) {
-                wrappedSetter = deg -> setter.accept(Units.degreesToRadians(deg));
-            }
-            addDouble(name, wrappedGetter, wrappedSetter);
+        private TelemetryProperty addScaled(String name, DoubleSupplier getter, DoubleConsumer setter, double scale) {
+            return TelemetryEngine.register(group, new DoubleProperty(table, name, getter, setter, scale));
         }
 
-        public void displayAsRotations(String name, DoubleSupplier getter) {
-            addDouble(name, getter, null);
+        public TelemetryProperty addString(String name, Supplier<String> getter) {
+            return TelemetryEngine.register(group, new StringProperty(table, name, getter));
         }
 
-        public void displayAsRotations(String name, DoubleSupplier getter, DoubleConsumer setter) {
-            DoubleSupplier wrappedGetter = () -> Units.radiansToRotations(getter.getAsDouble());
-            DoubleConsumer wrappedSetter = null;
-            if (setter != null) {
-                wrappedSetter = rot -> setter.accept(Units.rotationsToRadians(rot));
-            }
-            addDouble(name, wrappedGetter, wrappedSetter);
+        public TelemetryProperty addBoolean(String name, BooleanSupplier getter) {
+            return addBoolean(name, getter, null);
         }
 
-        public void addString(String name, Supplier<String> getter) {
-            builder.addStringProperty(name, getter, null);
+        public TelemetryProperty addBoolean(String name, BooleanSupplier getter, BooleanConsumer setter) {
+            return TelemetryEngine.register(group, new BooleanProperty(table, name, getter, setter));
         }
 
-        public void addBoolean(String name, BooleanSupplier getter) {
-            addBoolean(name, getter, null);
+        public TelemetryProperty addSpeeds(String name, Supplier<ChassisSpeeds> supplier) {
+            return addStruct(name, ChassisSpeeds.struct, supplier);
         }
 
-        public void addBoolean(String name, BooleanSupplier getter, BooleanConsumer setter) {
-            builder.addBooleanProperty(name, getter, setter);
+        public TelemetryProperty addPose(String name, Supplier<Pose2d> supplier) {
+            return addStruct(name, Pose2d.struct, supplier);
         }
 
-        public void addSpeeds(String name, Supplier<ChassisSpeeds> supplier) {
-            final double [] data = new double[3];
-            addDoubleArray(name, () -> {
-                ChassisSpeeds speeds = supplier.get();
-                if (speeds == null) {
-                    Arrays.fill(data, 0.0);
-                } else {
-                    data[0] = Units.metersToFeet(speeds.vxMetersPerSecond);
-                    data[1] = Units.metersToFeet(speeds.vyMetersPerSecond);
-                    data[2] = Units.radiansToDegrees(speeds.omegaRadiansPerSecond);
-                }
-                return data;
-            });
+        public TelemetryProperty addState(String name, Supplier<TrapezoidProfile.State> supplier) {
+            return addStruct(name, TrapezoidStateStruct.INSTANCE, supplier);
         }
 
-        public void addPose(String name, Supplier<Pose2d> supplier) {
-            final double [] data = new double[3];
-            addDoubleArray(name, () -> {
-                Pose2d pose = supplier.get();
-                if (pose == null) {
-                    Arrays.fill(data, 0.0);
-                } else {
-                    data[0] = pose.getX();
-                    data[1] = pose.getY();
-                    data[2] = pose.getRotation().getDegrees();
-                }
-                return data;
-            });
+        public <T> TelemetryProperty addStruct(String name, Struct<T> struct, Supplier<T> supplier) {
+            return TelemetryEngine.register(group, new StructProperty<>(table, name, struct, supplier));
         }
     }
 }
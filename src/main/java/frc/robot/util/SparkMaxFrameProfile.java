@@ -0,0 +1,167 @@
+package frc.robot.util;
+
+import com.revrobotics.CANSparkBase;
+import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.REVLibError;
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.util.telemetry.PublishRate;
+
+/**
+ * Status frame periods for a SparkMax, chosen by the role the controller plays.
+ * REV's defaults broadcast every frame whether or not anybody reads it; these
+ * profiles keep the frames our code actually uses and slow everything else
+ * down to the maximum period. A period of 0 below means "nobody reads this".
+ *
+ * For reference, the frames are:
+ * <ul>
+ *     <li>Status 0 (default 10ms) - applied output, faults (followers track
+ *     their leader's applied output from this frame)</li>
+ *     <li>Status 1 (default 20ms) - velocity, temperature, voltage, current</li>
+ *     <li>Status 2 (default 20ms) - position</li>
+ *     <li>Status 3 (default 50ms) - analog sensor</li>
+ *     <li>Status 4 (default 20ms) - alternate encoder</li>
+ *     <li>Status 5 (default 200ms) - duty cycle absolute encoder position</li>
+ *     <li>Status 6 (default 200ms) - duty cycle absolute encoder velocity</li>
+ * </ul>
+ *
+ * A controller that resets (e.g. browning out mid-match) comes back with the
+ * default periods, so every profile keeps status 0, which carries the sticky
+ * "has reset" fault we watch for in {@link #reapplyIfReset(CANSparkMax, String, boolean)}.
+ */
+public enum SparkMaxFrameProfile {
+
+    /**
+     * Leader of a position-controlled mechanism: fast applied output for the
+     * follower, current and velocity, and position at 10ms since we estimate
+     * velocity from it
+     */
+    POSITION_LEADER(10, 20, 10, 0, 0, 0, 0),
+
+    /**
+     * Follower: nobody reads anything from it, so we only keep the faults
+     * frame at a modest rate
+     */
+    FOLLOWER(100, 0, 0, 0, 0, 0, 0),
+
+    /**
+     * Velocity-controlled wheel: current and velocity only
+     */
+    VELOCITY_WHEEL(100, 20, 0, 0, 0, 0, 0);
+
+    public static final int UNUSED = 65535;
+    public static final int MAX_ATTEMPTS = 3;
+
+    private static final PeriodicFrame [] FRAMES = {
+            PeriodicFrame.kStatus0,
+            PeriodicFrame.kStatus1,
+            PeriodicFrame.kStatus2,
+            PeriodicFrame.kStatus3,
+            PeriodicFrame.kStatus4,
+            PeriodicFrame.kStatus5,
+            PeriodicFrame.kStatus6
+    };
+    private static final int [] DEFAULT_PERIODS = { 10, 20, 20, 50, 20, 200, 200 };
+
+    private static double configuredFramesPerSecond = 0.0;
+    private static double defaultFramesPerSecond = 0.0;
+    private static int failures = 0;
+    private static int reapplied = 0;
+
+    static {
+        SmarterDashboard.putData("SparkMaxFrameProfile", builder -> {
+            builder.addDouble("ConfiguredFramesPerSecond", () -> configuredFramesPerSecond).atRate(PublishRate.SLOW);
+            builder.addDouble("DefaultFramesPerSecond", () -> defaultFramesPerSecond).atRate(PublishRate.SLOW);
+            builder.addDouble("Failures", () -> failures).atRate(PublishRate.SLOW);
+            builder.addDouble("Reapplied", () -> reapplied).atRate(PublishRate.SLOW);
+        });
+    }
+
+    private final int [] periods;
+
+    SparkMaxFrameProfile(int... periods) {
+        this.periods = new int[periods.length];
+        for (int i=0; i<periods.length; i++) {
+            this.periods[i] = periods[i] == 0 ? UNUSED : periods[i];
+        }
+    }
+
+    public int getPeriod(int frame) {
+        return periods[frame];
+    }
+
+    /**
+     * @return status frames per second a controller with this profile puts
+     * on the bus (UNUSED frames count as zero)
+     */
+    public double getFramesPerSecond() {
+        return framesPerSecond(periods);
+    }
+
+    /**
+     * Applies every frame period in this profile, retrying each a few times,
+     * and clears the controller's sticky faults so we can tell later if it
+     * resets. Note that a successful return only means each setting was sent
+     * without error; there's no way to read the periods back.
+     *
+     * @return true if every frame was set without error
+     */
+    public boolean apply(CANSparkMax motor, String name) {
+        motor.clearFaults();
+        boolean ok = configure(motor, name);
+        configuredFramesPerSecond += ok ? getFramesPerSecond() : framesPerSecond(DEFAULT_PERIODS);
+        defaultFramesPerSecond += framesPerSecond(DEFAULT_PERIODS);
+        return ok;
+    }
+
+    /**
+     * Checks whether the controller has reset since we configured it (it
+     * reports a sticky fault when it does) and if so, applies this profile
+     * again. Call it every loop; it only reads faults the controller is
+     * already broadcasting.
+     *
+     * @param lastResult result of the most recent apply, returned unchanged
+     * if the controller hasn't reset
+     * @return whether the latest attempt to apply the profile succeeded
+     */
+    public boolean reapplyIfReset(CANSparkMax motor, String name, boolean lastResult) {
+        if (!motor.getStickyFault(CANSparkBase.FaultID.kHasReset)) {
+            return lastResult;
+        }
+        DriverStation.reportWarning(String.format("%s (CAN %d): controller reset, reapplying status frames",
+                name, motor.getDeviceId()), false);
+        motor.clearFaults();
+        reapplied++;
+        return configure(motor, name);
+    }
+
+    private boolean configure(CANSparkMax motor, String name) {
+        boolean ok = true;
+        for (int i=0; i<FRAMES.length; i++) {
+            REVLibError error = REVLibError.kOk;
+            for (int attempt=0; attempt<MAX_ATTEMPTS; attempt++) {
+                error = motor.setPeriodicFramePeriod(FRAMES[i], periods[i]);
+                if (error == REVLibError.kOk) {
+                    break;
+                }
+            }
+            if (error != REVLibError.kOk) {
+                DriverStation.reportWarning(String.format("%s (CAN %d): failed to set %s to %dms (%s)",
+                        name, motor.getDeviceId(), FRAMES[i], periods[i], error), false);
+                failures++;
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    private static double framesPerSecond(int [] periods) {
+        double total = 0.0;
+        for (int period : periods) {
+            if (period != UNUSED) {
+                total += 1000.0 / period;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,375 @@
+package frc.robot.util.logging;
+
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.struct.Struct;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * On-robot data logger that never blocks the robot loop on I/O. Values are
+ * copied into a preallocated {@link LogRecordBuffer} on the robot thread, and
+ * a background thread drains the buffer into a WPILib {@link DataLog} file
+ * (which AdvantageScope and the WPILib tools read directly).
+ *
+ * Channels are registered (from the robot thread) and recorded by key;
+ * registering the same name again returns the existing key.
+ * The telemetry engine registers a channel for every dashboard property, so
+ * anything on the dashboard ends up in the log too.
+ */
+public class AsyncDataLogger {
+
+    public static final int BUFFER_RECORDS = 4096;
+    public static final long DRAIN_PERIOD_NANOS = 10_000_000L;
+
+    private enum ChannelType {
+        DOUBLE,
+        BOOLEAN,
+        STRING,
+        DOUBLE_ARRAY,
+        RAW
+    }
+
+    private static final class Channel {
+
+        final int entry;
+        final ChannelType type;
+        final double [][] arrays;
+        final String name;
+        final String [] fields;
+        volatile boolean echo;
+
+        Channel(int entry, ChannelType type, String name, String [] fields) {
+            this.entry = entry;
+            this.type = type;
+            this.arrays = type == ChannelType.DOUBLE_ARRAY
+                    ? new double[LogRecordBuffer.RECORD_BYTES / Double.BYTES + 1][]
+                    : null;
+            this.name = name;
+            this.fields = fields;
+        }
+    }
+
+    private static final AtomicLong written = new AtomicLong();
+    private static final AtomicLong truncated = new AtomicLong();
+    private static final StringBuilder echoText = new StringBuilder();
+    private static volatile Channel [] channels = new Channel[0];
+    private static volatile boolean running = false;
+    private static LogRecordBuffer buffer;
+    private static DataLog log;
+    private static Thread writer;
+    private static long timestamp;
+
+    private AsyncDataLogger() {}
+
+    public static boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Opens the log (through {@link DataLogManager}, so it lands in the usual
+     * place on the robot) and starts the writer thread
+     */
+    public static synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        // We record the dashboard ourselves, so there's no need for the
+        // manager to also mirror all of NetworkTables into the file
+        DataLogManager.logNetworkTables(false);
+        log = DataLogManager.getLog();
+
+        // driver station state and joysticks are the other half of what a
+        // match replay needs (the subsystems record their own inputs)
+        DriverStation.startDataLog(log);
+        buffer = new LogRecordBuffer(BUFFER_RECORDS);
+        running = true;
+
+        writer = new Thread(AsyncDataLogger::drainLoop, "AsyncDataLogger");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+
+        SmarterDashboard.putData("AsyncDataLogger", builder -> {
+            builder.addDouble("Buffered", () -> buffer.size()).atRate(PublishRate.SLOW);
+            builder.addDouble("Dropped", () -> buffer.getDropped()).atRate(PublishRate.SLOW);
+            builder.addDouble("Truncated", truncated::get).atRate(PublishRate.SLOW);
+            builder.addDouble("Written", written::get).atRate(PublishRate.SLOW);
+        });
+    }
+
+    /**
+     * Sets the timestamp (FPGA microseconds) used for records that don't
+     * supply their own; the telemetry engine calls this once per loop
+     */
+    public static void setTimestamp(long micros) {
+        timestamp = micros;
+    }
+
+    public static long getTimestamp() {
+        return timestamp;
+    }
+
+    // ---- channel registration (robot thread) ----
+
+    public static int registerDouble(String name) {
+        return register(name, "double", ChannelType.DOUBLE);
+    }
+
+    public static int registerBoolean(String name) {
+        return register(name, "boolean", ChannelType.BOOLEAN);
+    }
+
+    public static int registerString(String name) {
+        return register(name, "string", ChannelType.STRING);
+    }
+
+    public static int registerDoubleArray(String name) {
+        return register(name, "double[]", ChannelType.DOUBLE_ARRAY);
+    }
+
+    public static int registerStruct(String name, Struct<?> struct) {
+        if (!running) {
+            return -1;
+        }
+        log.addSchema(struct);
+        return register(name, struct.getTypeString(), ChannelType.RAW);
+    }
+
+    /**
+     * Registers a channel of numeric events. Each event is stored as a double[]
+     * whose field names are recorded in the entry metadata, so the log can be
+     * rendered offline; see also {@link #setEcho(int, boolean)}.
+     */
+    public static int registerEvent(String name, String [] fields) {
+        if (fields.length > LogRecordBuffer.RECORD_BYTES / Double.BYTES) {
+            throw new IllegalArgumentException("too many fields for event " + name);
+        }
+        return register(name, "double[]", ChannelType.DOUBLE_ARRAY, fields);
+    }
+
+    /**
+     * Turns console output for an event channel on or off. Events are
+     * formatted and printed by the writer thread, never the robot thread.
+     */
+    public static void setEcho(int key, boolean echo) {
+        if (key >= 0) {
+            channels[key].echo = echo;
+        }
+    }
+
+    private static int register(String name, String type, ChannelType channelType) {
+        return register(name, type, channelType, null);
+    }
+
+    private static synchronized int register(String name, String type, ChannelType channelType, String [] fields) {
+        if (!running) {
+            return -1;
+        }
+        // groups are registered again whenever they're rebuilt (for example
+        // by each new instance of a command), so we hand back the existing
+        // channel rather than starting another entry for the same name
+        Channel [] current = channels;
+        for (int i=0; i<current.length; i++) {
+            if (current[i].name.equals(name)) {
+                if (current[i].type != channelType) {
+                    DriverStation.reportWarning("AsyncDataLogger: " + name + " is already registered as " + current[i].type, false);
+                    return -1;
+                }
+                return i;
+            }
+        }
+        String metadata = fields == null ? "" : "{\"fields\":[\"" + String.join("\",\"", fields) + "\"]}";
+        Channel [] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = new Channel(log.start(name, type, metadata), channelType, name, fields);
+        channels = updated;
+        return current.length;
+    }
+
+    // ---- recording (robot thread) ----
+
+    public static void recordDouble(int key, double value) {
+        recordDouble(key, value, timestamp);
+    }
+
+    public static void recordDouble(int key, double value, long micros) {
+        int slot = claim(key);
+        if (slot >= 0) {
+            buffer.producerView().putDouble(buffer.offset(slot), value);
+            buffer.commit(slot, key, micros, Double.BYTES);
+        }
+    }
+
+    public static void recordBoolean(int key, boolean value) {
+        int slot = claim(key);
+        if (slot >= 0) {
+            buffer.payload()[buffer.offset(slot)] = (byte) (value ? 1 : 0);
+            buffer.commit(slot, key, timestamp, 1);
+        }
+    }
+
+    /**
+     * Records a string one byte per character (non-ASCII characters become
+     * '?'), so that nothing has to be encoded or allocated on the robot thread
+     */
+    public static void recordString(int key, String value) {
+        int slot = claim(key);
+        if (slot >= 0) {
+            byte [] payload = buffer.payload();
+            int offset = buffer.offset(slot);
+            int length = Math.min(value.length(), LogRecordBuffer.RECORD_BYTES);
+            if (length < value.length()) {
+                truncated.incrementAndGet();
+            }
+            for (int i=0; i<length; i++) {
+                char c = value.charAt(i);
+                payload[offset + i] = (byte) (c < 128 ? c : '?');
+            }
+            buffer.commit(slot, key, timestamp, length);
+        }
+    }
+
+    public static void recordDoubleArray(int key, double [] values) {
+        recordDoubleArray(key, values, values.length, timestamp);
+    }
+
+    public static void recordDoubleArray(int key, double [] values, int count, long micros) {
+        int slot = claim(key);
+        if (slot >= 0) {
+            ByteBuffer view = buffer.producerView();
+            int offset = buffer.offset(slot);
+            int length = Math.min(count, LogRecordBuffer.RECORD_BYTES / Double.BYTES);
+            if (length < count) {
+                truncated.incrementAndGet();
+            }
+            for (int i=0; i<length; i++) {
+                view.putDouble(offset + i * Double.BYTES, values[i]);
+            }
+            buffer.commit(slot, key, micros, length * Double.BYTES);
+        }
+    }
+
+    /**
+     * Records the bytes between the source buffer's position and limit
+     * (without changing either)
+     */
+    public static void recordRaw(int key, ByteBuffer source) {
+        int slot = claim(key);
+        if (slot >= 0) {
+            int length = Math.min(source.remaining(), LogRecordBuffer.RECORD_BYTES);
+            if (length < source.remaining()) {
+                truncated.incrementAndGet();
+            }
+            buffer.producerView().put(buffer.offset(slot), source, source.position(), length);
+            buffer.commit(slot, key, timestamp, length);
+        }
+    }
+
+    private static int claim(int key) {
+        if (key < 0 || !running) {
+            return -1;
+        }
+        return buffer.claim();
+    }
+
+    // ---- writer thread ----
+
+    private static void drainLoop() {
+        while (running) {
+            drain();
+            LockSupport.parkNanos(DRAIN_PERIOD_NANOS);
+        }
+        drain();
+    }
+
+    private static void drain() {
+        Channel [] known = channels;
+        ByteBuffer view = buffer.consumerView();
+        byte [] payload = buffer.payload();
+        int slot;
+        while ((slot = buffer.peek()) >= 0) {
+
+            int key = buffer.key(slot);
+            long micros = buffer.timestamp(slot);
+            int length = buffer.length(slot);
+            int offset = buffer.offset(slot);
+
+            // A record can only show up after its channel was registered,
+            // but we may be holding a stale copy of the channel list
+            if (key >= known.length) {
+                known = channels;
+            }
+            Channel channel = known[key];
+
+            switch (channel.type) {
+                case DOUBLE:
+                    log.appendDouble(channel.entry, view.getDouble(offset), micros);
+                    break;
+                case BOOLEAN:
+                    log.appendBoolean(channel.entry, payload[offset] != 0, micros);
+                    break;
+                case STRING:
+                    log.appendString(channel.entry, new String(payload, offset, length, StandardCharsets.US_ASCII), micros);
+                    break;
+                case DOUBLE_ARRAY:
+                    int count = length / Double.BYTES;
+                    double [] values = channel.arrays[count];
+                    if (values == null) {
+                        values = new double[count];
+                        channel.arrays[count] = values;
+                    }
+                    for (int i=0; i<count; i++) {
+                        values[i] = view.getDouble(offset + i * Double.BYTES);
+                    }
+                    log.appendDoubleArray(channel.entry, values, micros);
+                    if (channel.echo) {
+                        echo(channel, values, micros);
+                    }
+                    break;
+                case RAW:
+                    log.appendRaw(channel.entry, payload, offset, length, micros);
+                    break;
+            }
+
+            buffer.release();
+            written.lazySet(written.get() + 1);
+        }
+    }
+
+    private static void echo(Channel channel, double [] values, long micros) {
+        echoText.setLength(0);
+        echoText.append(channel.name).append(" @ ").append(micros / 1e6);
+        for (int i=0; i<values.length; i++) {
+            echoText.append(i == 0 ? ": " : ", ")
+                    .append(channel.fields == null ? String.valueOf(i) : channel.fields[i])
+                    .append('=')
+                    .append(values[i]);
+        }
+        System.out.println(echoText);
+    }
+
+    /**
+     * Stops the writer thread after it drains whatever is left in the buffer
+     */
+    public static synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.flush();
+    }
+}
@@ -0,0 +1,81 @@
+package frc.robot.util.logging;
+
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * A stream of structured numeric events (e.g. one per vision frame) recorded
+ * through the {@link AsyncDataLogger}. Recording an event just copies a few
+ * doubles into the log buffer; any formatting happens later, either offline
+ * (field names are stored in the log metadata) or on the writer thread if
+ * console echo is turned on.
+ *
+ * <pre>
+ * frames.begin()
+ *     .add(latency)
+ *     .add(tagCount)
+ *     .end();
+ * </pre>
+ */
+public class EventLog {
+
+    private final String name;
+    private final String [] fields;
+    private final double [] values;
+    private int key;
+    private int count;
+    private boolean echo;
+
+    public EventLog(String name, String... fields) {
+        this.name = name;
+        this.fields = fields.clone();
+        this.values = new double[fields.length];
+        this.key = -1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEcho() {
+        return echo;
+    }
+
+    /**
+     * Turns console output for this log on and off (it's rendered on the
+     * logger's writer thread, so it won't slow down the loop)
+     */
+    public void setEcho(boolean echo) {
+        this.echo = echo;
+        AsyncDataLogger.setEcho(getKey(), echo);
+    }
+
+    public EventLog begin() {
+        count = 0;
+        return this;
+    }
+
+    public EventLog add(double value) {
+        if (count < values.length) {
+            values[count++] = value;
+        }
+        return this;
+    }
+
+    public EventLog add(boolean value) {
+        return add(value ? 1.0 : 0.0);
+    }
+
+    public void end() {
+        AsyncDataLogger.recordDoubleArray(getKey(), values, count, RobotController.getFPGATime());
+    }
+
+    // The channel is registered lazily, so an EventLog can be created before
+    // the logger has been started
+    private int getKey() {
+        if (key < 0 && AsyncDataLogger.isRunning()) {
+            key = AsyncDataLogger.registerEvent(name, fields);
+            AsyncDataLogger.setEcho(key, echo);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,140 @@
+package frc.robot.util.logging;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated single-producer/single-consumer ring of fixed-size log records.
+ * The robot thread claims a slot, writes its payload and commits it; the writer
+ * thread peeks, reads and releases. Neither side ever blocks or allocates - if
+ * the ring is full the record is dropped and counted.
+ *
+ * Each record is a channel key, a timestamp (microseconds), a payload length
+ * and up to {@link #RECORD_BYTES} bytes of payload.
+ */
+public class LogRecordBuffer {
+
+    public static final int RECORD_BYTES = 128;
+
+    private final int capacity;
+    private final int mask;
+    private final int [] keys;
+    private final long [] timestamps;
+    private final int [] lengths;
+    private final byte [] payload;
+    private final ByteBuffer producerView;
+    private final ByteBuffer consumerView;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final AtomicLong dropped;
+
+    /**
+     * @param capacity number of records (rounded up to a power of two)
+     */
+    public LogRecordBuffer(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.keys = new int[this.capacity];
+        this.timestamps = new long[this.capacity];
+        this.lengths = new int[this.capacity];
+        this.payload = new byte[this.capacity * RECORD_BYTES];
+        this.producerView = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN);
+        this.consumerView = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN);
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.dropped = new AtomicLong();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    // ---- producer side (robot thread only) ----
+
+    /**
+     * @return the slot to write the next record into, or -1 if the ring is
+     * full (in which case the record is counted as dropped)
+     */
+    public int claim() {
+        long h = head.get();
+        if (h - tail.get() >= capacity) {
+            dropped.lazySet(dropped.get() + 1);
+            return -1;
+        }
+        return (int) (h & mask);
+    }
+
+    /**
+     * @return a little-endian view of the payload storage; write into it with
+     * absolute puts starting at {@link #offset(int)}
+     */
+    public ByteBuffer producerView() {
+        return producerView;
+    }
+
+    /**
+     * @return the raw payload storage (for writing bytes directly)
+     */
+    public byte [] payload() {
+        return payload;
+    }
+
+    public int offset(int slot) {
+        return slot * RECORD_BYTES;
+    }
+
+    /**
+     * Publishes a claimed slot to the consumer
+     */
+    public void commit(int slot, int key, long timestamp, int length) {
+        keys[slot] = key;
+        timestamps[slot] = timestamp;
+        lengths[slot] = length;
+        head.lazySet(head.get() + 1);
+    }
+
+    // ---- consumer side (writer thread only) ----
+
+    /**
+     * @return the slot of the oldest committed record, or -1 if there isn't one
+     */
+    public int peek() {
+        long t = tail.get();
+        if (t == head.get()) {
+            return -1;
+        }
+        return (int) (t & mask);
+    }
+
+    public int key(int slot) {
+        return keys[slot];
+    }
+
+    public long timestamp(int slot) {
+        return timestamps[slot];
+    }
+
+    public int length(int slot) {
+        return lengths[slot];
+    }
+
+    public ByteBuffer consumerView() {
+        return consumerView;
+    }
+
+    /**
+     * Hands the oldest record's slot back to the producer
+     */
+    public void release() {
+        tail.lazySet(tail.get() + 1);
+    }
+}
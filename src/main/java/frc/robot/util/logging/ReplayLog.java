@@ -0,0 +1,211 @@
+package frc.robot.util.logging;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A recorded DataLog file, loaded for replay. The reader maps the file into
+ * memory rather than streaming it, and we make a single pass over it, keeping
+ * only the channels we're asked for. Each channel's records end up in
+ * timestamp order in parallel arrays, so finding the records around any point
+ * in the match is a binary search.
+ *
+ * Every record's value is kept as a double[] whatever its type (a single
+ * double or boolean is a one-element array, booleans are 0/1), which covers
+ * {@link EventLog} channels, dashboard values and the driver station data
+ * WPILib records.
+ */
+public class ReplayLog {
+
+    /**
+     * The records of one channel, in timestamp order
+     */
+    public static class Channel {
+
+        private final String name;
+        private final String type;
+        private long [] timestamps;
+        private double [][] values;
+        private int size;
+
+        private Channel(String name, String type) {
+            this.name = name;
+            this.type = type;
+            this.timestamps = new long[64];
+            this.values = new double[64][];
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return time of a record (FPGA micros)
+         */
+        public long getTimestamp(int idx) {
+            return timestamps[idx];
+        }
+
+        public double [] getValues(int idx) {
+            return values[idx];
+        }
+
+        /**
+         * @return index of the first record at or after the supplied time
+         * (size() if there isn't one)
+         */
+        public int seek(long timestampMicros) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestamps[mid] < timestampMicros) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private void add(long timestampMicros, double [] value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            // records are almost always written in order, but nothing
+            // guarantees it, so keep the arrays sorted as we go
+            int idx = size;
+            while (idx > 0 && timestamps[idx - 1] > timestampMicros) {
+                timestamps[idx] = timestamps[idx - 1];
+                values[idx] = values[idx - 1];
+                idx--;
+            }
+            timestamps[idx] = timestampMicros;
+            values[idx] = value;
+            size++;
+        }
+    }
+
+    private final String path;
+    private final Map<String, Channel> channels;
+    private long records;
+
+    /**
+     * @param wanted which channels (by name) to load
+     * @throws IOException if the file can't be read or isn't a DataLog
+     */
+    public ReplayLog(String path, Predicate<String> wanted) throws IOException {
+
+        this.path = path;
+        this.channels = new HashMap<>();
+
+        DataLogReader reader = new DataLogReader(path);
+        if (!reader.isValid()) {
+            throw new IOException("not a WPILib data log: " + path);
+        }
+
+        // entry ids can be reused once an entry is finished, so we map them
+        // to channels as the start and finish records go by
+        Map<Integer, Channel> entries = new HashMap<>();
+        for (DataLogRecord record : reader) {
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                if (wanted.test(start.name)) {
+                    Channel channel = channels.computeIfAbsent(start.name, name -> new Channel(name, start.type));
+                    entries.put(start.entry, channel);
+                }
+            } else if (record.isFinish()) {
+                entries.remove(record.getFinishEntry());
+            } else if (!record.isControl()) {
+                Channel channel = entries.get(record.getEntry());
+                if (channel != null) {
+                    double [] value = decode(channel.type, record);
+                    if (value != null) {
+                        channel.add(record.getTimestamp(), value);
+                        records++;
+                    }
+                }
+            }
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return total number of records loaded
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return the named channel, or null if it isn't in the log (or wasn't wanted)
+     */
+    public Channel getChannel(String name) {
+        return channels.get(name);
+    }
+
+    public Collection<Channel> getChannels() {
+        return channels.values();
+    }
+
+    // null for types we don't replay
+    private static double [] decode(String type, DataLogRecord record) {
+        switch (type) {
+            case "double":
+                return new double[] { record.getDouble() };
+            case "float":
+                return new double[] { record.getFloat() };
+            case "int64":
+                return new double[] { record.getInteger() };
+            case "boolean":
+                return new double[] { record.getBoolean() ? 1.0 : 0.0 };
+            case "double[]":
+                return record.getDoubleArray();
+            case "float[]": {
+                float [] floats = record.getFloatArray();
+                double [] value = new double[floats.length];
+                for (int i=0; i<floats.length; i++) {
+                    value[i] = floats[i];
+                }
+                return value;
+            }
+            case "int64[]": {
+                long [] longs = record.getIntegerArray();
+                double [] value = new double[longs.length];
+                for (int i=0; i<longs.length; i++) {
+                    value[i] = longs[i];
+                }
+                return value;
+            }
+            case "boolean[]": {
+                boolean [] booleans = record.getBooleanArray();
+                double [] value = new double[booleans.length];
+                for (int i=0; i<booleans.length; i++) {
+                    value[i] = booleans[i] ? 1.0 : 0.0;
+                }
+                return value;
+            }
+            default:
+                return null;
+        }
+    }
+}
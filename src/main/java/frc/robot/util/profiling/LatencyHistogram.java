@@ -0,0 +1,79 @@
+package frc.robot.util.profiling;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-bucket histogram of durations in microseconds. Recording a sample is
+ * an array increment - no allocation, no sorting. Percentiles are resolved to
+ * the upper edge of the bucket they fall in, which is plenty accurate for
+ * chasing loop overruns.
+ */
+public class LatencyHistogram {
+
+    private final long bucketMicros;
+    private final long [] buckets;
+    private long count;
+    private long max;
+    private long last;
+
+    /**
+     * @param bucketMicros width of each bucket
+     * @param bucketCount number of buckets; anything past the last bucket is
+     *                    counted in it (but still shows up in {@link #getMax()})
+     */
+    public LatencyHistogram(long bucketMicros, int bucketCount) {
+        this.bucketMicros = bucketMicros;
+        this.buckets = new long[bucketCount];
+    }
+
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        int idx = (int) Math.min(micros / bucketMicros, buckets.length - 1);
+        buckets[idx]++;
+        count++;
+        last = micros;
+        if (micros > max) {
+            max = micros;
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    /**
+     * @param fraction e.g. 0.99 for p99
+     * @return the duration (micros) below which that fraction of samples fell
+     */
+    public long getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i=0; i<buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= threshold) {
+                return Math.min((i + 1) * bucketMicros, max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(buckets, 0L);
+        count = 0;
+        max = 0;
+        last = 0;
+    }
+}
@@ -0,0 +1,96 @@
+package frc.robot.util.profiling;
+
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures how old the data behind an output is. Each path (e.g. "camera
+ * capture to drive command") gets a {@link LatencyHistogram}; the code that
+ * issues the output records the timestamp of the data it acted on, and the
+ * tracer records the difference between then and now. p50/p99/max for each
+ * path are published at a low rate.
+ *
+ * All timestamps are on the FPGA clock (NetworkTables timestamps on the
+ * robot use it too, so camera capture times can be passed straight in).
+ */
+public class LatencyTracer {
+
+    public static final long BUCKET_MICROS = 100;
+    public static final int BUCKET_COUNT = 2_000;
+
+    /**
+     * A named source-to-output path
+     */
+    public static class Path {
+
+        private final String name;
+        private final LatencyHistogram histogram;
+
+        private Path(String name) {
+            this.name = name;
+            this.histogram = new LatencyHistogram(BUCKET_MICROS, BUCKET_COUNT);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        /**
+         * Records an output acting on data from the supplied time (FPGA
+         * microseconds); non-positive times mean "no data yet" and are ignored
+         */
+        public void record(long sourceMicros) {
+            if (sourceMicros > 0L) {
+                histogram.record(Math.max(0L, RobotController.getFPGATime() - sourceMicros));
+            }
+        }
+
+        /**
+         * Records an output acting on data from the supplied time (FPGA
+         * seconds, e.g. a camera capture time)
+         */
+        public void recordSeconds(double sourceSeconds) {
+            if (sourceSeconds > 0.0) {
+                record((long) (sourceSeconds * 1_000_000.0));
+            }
+        }
+    }
+
+    private static final Map<String, Path> paths = new HashMap<>();
+
+    private LatencyTracer() {}
+
+    /**
+     * @return the path with the supplied name (created and published to the
+     * dashboard the first time it is requested)
+     */
+    public static Path path(String name) {
+        Path path = paths.get(name);
+        if (path == null) {
+            path = new Path(name);
+            paths.put(name, path);
+            final LatencyHistogram histogram = path.histogram;
+            SmarterDashboard.putData("LatencyTracer/" + name, builder -> {
+                builder.addDouble("P50Ms", () -> histogram.getPercentile(0.50) / 1000.0).atRate(PublishRate.SLOW);
+                builder.addDouble("P99Ms", () -> histogram.getPercentile(0.99) / 1000.0).atRate(PublishRate.SLOW);
+                builder.addDouble("MaxMs", () -> histogram.getMax() / 1000.0).atRate(PublishRate.SLOW);
+                builder.addDouble("Count", histogram::getCount).atRate(PublishRate.SLOW);
+            });
+        }
+        return path;
+    }
+
+    public static void reset() {
+        for (Path path : paths.values()) {
+            path.histogram.reset();
+        }
+    }
+}
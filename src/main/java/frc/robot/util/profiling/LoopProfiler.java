@@ -0,0 +1,225 @@
+package frc.robot.util.profiling;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.util.SmarterDashboard;
+import frc.robot.util.logging.EventLog;
+import frc.robot.util.telemetry.PublishRate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times named sections of the robot loop (subsystem periodic methods, command
+ * lifecycle methods) into {@link LatencyHistogram}s, publishes p50/p99/max for
+ * each of them at a low rate, and flags loops that blow the 20ms budget along
+ * with the section that took the most time during that loop.
+ *
+ * Subsystems time themselves:
+ * <pre>
+ * long start = periodicTimer.start();
+ * ...
+ * periodicTimer.stop(start);
+ * </pre>
+ * and every command the scheduler runs is timed through its hooks once
+ * {@link #profileCommands(CommandScheduler)} has been called.
+ */
+public class LoopProfiler {
+
+    public static final long LOOP_BUDGET_MICROS = 20_000;
+    public static final long BUCKET_MICROS = 20;
+    public static final int BUCKET_COUNT = 2_000;
+
+    /**
+     * A named, timed piece of the loop
+     */
+    public static class Section {
+
+        private final String name;
+        private final LatencyHistogram histogram;
+        private long loopMicros;
+        private long loopId;
+
+        private Section(String name) {
+            this.name = name;
+            this.histogram = new LatencyHistogram(BUCKET_MICROS, BUCKET_COUNT);
+            this.loopId = -1;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        public long start() {
+            return System.nanoTime();
+        }
+
+        public void stop(long startNanos) {
+            long now = System.nanoTime();
+            long micros = (now - startNanos) / 1_000;
+            lastStop = now;
+            histogram.record(micros);
+            if (loopId != currentLoop) {
+                loopId = currentLoop;
+                loopMicros = 0;
+            }
+            loopMicros += micros;
+        }
+    }
+
+    /**
+     * The sections a command's lifecycle steps are timed into
+     */
+    private static class CommandSections {
+
+        private final Section initialize;
+        private final Section execute;
+        private final Section end;
+
+        private CommandSections(String name) {
+            this.initialize = section(name + ".initialize");
+            this.execute = section(name + ".execute");
+            this.end = section(name + ".end");
+        }
+    }
+
+    private static final Map<String, Section> sectionsByName = new HashMap<>();
+    private static final Map<String, CommandSections> commandsByName = new HashMap<>();
+    private static final List<Section> sections = new ArrayList<>();
+    private static final Section loop = section("Loop");
+    private static final EventLog overrunLog = new EventLog("LoopProfiler/Overruns",
+            "loopMs", "culpritMs");
+    private static long currentLoop = 0;
+    private static long loopStart;
+    private static long lastStop;
+    private static boolean inLoop = false;
+    private static long overruns = 0;
+    private static String lastOverrun = "";
+
+    static {
+        SmarterDashboard.putData("LoopProfiler", builder -> {
+            builder.addDouble("Overruns", () -> overruns).atRate(PublishRate.SLOW);
+            builder.addString("LastOverrun", () -> lastOverrun).atRate(PublishRate.SLOW);
+            builder.addBoolean("Reset?", () -> false, val -> { if (val) reset(); }).atRate(PublishRate.ON_CHANGE);
+        });
+    }
+
+    private LoopProfiler() {}
+
+    /**
+     * @return the section with the supplied name (created and published to the
+     * dashboard the first time it is requested)
+     */
+    public static Section section(String name) {
+        Section section = sectionsByName.get(name);
+        if (section == null) {
+            section = new Section(name);
+            sectionsByName.put(name, section);
+            sections.add(section);
+            final LatencyHistogram histogram = section.histogram;
+            SmarterDashboard.putData("LoopProfiler/" + name, builder -> {
+                builder.addDouble("P50Ms", () -> histogram.getPercentile(0.50) / 1000.0).atRate(PublishRate.SLOW);
+                builder.addDouble("P99Ms", () -> histogram.getPercentile(0.99) / 1000.0).atRate(PublishRate.SLOW);
+                builder.addDouble("MaxMs", () -> histogram.getMax() / 1000.0).atRate(PublishRate.SLOW);
+                builder.addDouble("Count", histogram::getCount).atRate(PublishRate.SLOW);
+            });
+        }
+        return section;
+    }
+
+    /**
+     * Times the lifecycle of every command the supplied scheduler runs. The
+     * scheduler only tells us after each step, so (like its own watchdog)
+     * we time each step from the end of whatever was timed before it: the
+     * subsystems, the button loop, or the previous step. isFinished() is
+     * counted with the execute() or end() that follows it. Commands with the
+     * same name share sections.
+     */
+    public static void profileCommands(CommandScheduler scheduler) {
+        // the button loop is polled after the subsystems and right before
+        // the commands run, so the first command isn't blamed for anything
+        // between the last timed subsystem and itself
+        scheduler.getActiveButtonLoop().bind(() -> lastStop = System.nanoTime());
+        scheduler.onCommandInitialize(command -> stopStep(sectionsFor(command).initialize));
+        scheduler.onCommandExecute(command -> stopStep(sectionsFor(command).execute));
+        scheduler.onCommandFinish(command -> stopStep(sectionsFor(command).end));
+        scheduler.onCommandInterrupt(command -> stopStep(sectionsFor(command).end));
+    }
+
+    private static CommandSections sectionsFor(Command command) {
+        String name = command.getName();
+        CommandSections sections = commandsByName.get(name);
+        if (sections == null) {
+            sections = new CommandSections(name);
+            commandsByName.put(name, sections);
+        }
+        return sections;
+    }
+
+    // commands scheduled outside robotPeriodic (e.g. from teleopInit) have
+    // nothing to be timed from, so they're skipped
+    private static void stopStep(Section section) {
+        if (inLoop) {
+            section.stop(lastStop);
+        } else {
+            lastStop = System.nanoTime();
+        }
+    }
+
+    public static long getOverruns() {
+        return overruns;
+    }
+
+    public static List<Section> getSections() {
+        return sections;
+    }
+
+    /**
+     * Call at the very start of robotPeriodic
+     */
+    public static void beginLoop() {
+        currentLoop++;
+        loopStart = loop.start();
+        lastStop = loopStart;
+        inLoop = true;
+    }
+
+    /**
+     * Call at the very end of robotPeriodic. If the loop went over budget,
+     * the section that used the most time during it gets the blame.
+     */
+    public static void endLoop() {
+        inLoop = false;
+        loop.stop(loopStart);
+        if (loop.loopMicros > LOOP_BUDGET_MICROS) {
+            Section culprit = null;
+            for (int i=0; i<sections.size(); i++) {
+                Section section = sections.get(i);
+                if (section != loop && section.loopId == currentLoop
+                        && (culprit == null || section.loopMicros > culprit.loopMicros)) {
+                    culprit = section;
+                }
+            }
+            overruns++;
+            lastOverrun = culprit == null ? "" : culprit.name;
+            overrunLog.begin()
+                    .add(loop.loopMicros / 1000.0)
+                    .add(culprit == null ? 0.0 : culprit.loopMicros / 1000.0)
+                    .end();
+        }
+    }
+
+    public static void reset() {
+        for (Section section : sections) {
+            section.histogram.reset();
+        }
+        overruns = 0;
+        lastOverrun = "";
+    }
+}
@@ -0,0 +1,91 @@
+package frc.robot.util.telemetry;
+
+import edu.wpi.first.networktables.BooleanEntry;
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.util.function.BooleanConsumer;
+import frc.robot.util.logging.AsyncDataLogger;
+
+import java.util.EnumSet;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Boolean property, optionally writable from the dashboard
+ */
+public class BooleanProperty extends TelemetryProperty {
+
+    private final BooleanSupplier getter;
+    private final BooleanConsumer setter;
+    private final BooleanPublisher publisher;
+    private final BooleanEntry entry;
+    private final int listener;
+    private volatile boolean remoteWrite;
+    private boolean lastValue;
+
+    public BooleanProperty(NetworkTable table, String name, BooleanSupplier getter, BooleanConsumer setter) {
+        super(name);
+        this.getter = getter;
+        this.setter = setter;
+        if (setter != null) {
+            this.entry = table.getBooleanTopic(name).getEntry(false);
+            this.publisher = entry;
+            this.listener = NetworkTableInstance.getDefault().addListener(
+                    entry,
+                    EnumSet.of(NetworkTableEvent.Kind.kValueRemote),
+                    event -> remoteWrite = true);
+        } else {
+            this.entry = null;
+            this.listener = 0;
+            this.publisher = table.getBooleanTopic(name).publish();
+        }
+    }
+
+    @Override
+    public boolean write(String text) {
+        if (setter == null || !(text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false"))) {
+            return false;
+        }
+        setter.accept(Boolean.parseBoolean(text));
+        update();
+        return true;
+    }
+
+    @Override
+    protected void pollWrites() {
+        if (remoteWrite) {
+            remoteWrite = false;
+            if (published) {
+                setter.accept(entry.get());
+            }
+            update();
+        }
+    }
+
+    @Override
+    protected void update() {
+        boolean value = getter.getAsBoolean();
+        if (!published || value != lastValue) {
+            publisher.set(value);
+            lastValue = value;
+            published = true;
+            if (logKey >= 0) {
+                AsyncDataLogger.recordBoolean(logKey, value);
+            }
+        }
+    }
+
+    @Override
+    protected int registerLogChannel(String path) {
+        return AsyncDataLogger.registerBoolean(path);
+    }
+
+    @Override
+    protected void close() {
+        if (entry != null) {
+            NetworkTableInstance.getDefault().removeListener(listener);
+        }
+        publisher.close();
+    }
+}
@@ -0,0 +1,69 @@
+package frc.robot.util.telemetry;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import frc.robot.util.logging.AsyncDataLogger;
+
+import java.util.function.Supplier;
+
+/**
+ * Read-only array property. Keeps its own copy of the last array it sent
+ * (getters are allowed to reuse the array they return) and compares it
+ * element by element.
+ */
+public class DoubleArrayProperty extends TelemetryProperty {
+
+    private static final double [] EMPTY = new double[0];
+
+    private final Supplier<double[]> getter;
+    private final DoubleArrayPublisher publisher;
+    private double [] lastValue;
+
+    public DoubleArrayProperty(NetworkTable table, String name, Supplier<double[]> getter) {
+        super(name);
+        this.getter = getter;
+        this.publisher = table.getDoubleArrayTopic(name).publish();
+        this.lastValue = EMPTY;
+    }
+
+    @Override
+    protected void update() {
+        double [] value = getter.get();
+        if (value == null) {
+            value = EMPTY;
+        }
+        if (!published || changed(value)) {
+            publisher.set(value);
+            if (lastValue.length != value.length) {
+                lastValue = new double[value.length];
+            }
+            System.arraycopy(value, 0, lastValue, 0, value.length);
+            published = true;
+            if (logKey >= 0) {
+                AsyncDataLogger.recordDoubleArray(logKey, value);
+            }
+        }
+    }
+
+    @Override
+    protected int registerLogChannel(String path) {
+        return AsyncDataLogger.registerDoubleArray(path);
+    }
+
+    private boolean changed(double [] value) {
+        if (value.length != lastValue.length) {
+            return true;
+        }
+        for (int i=0; i<value.length; i++) {
+            if (changed(lastValue[i], value[i], epsilon)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void close() {
+        publisher.close();
+    }
+}
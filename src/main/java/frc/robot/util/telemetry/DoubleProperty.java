@@ -0,0 +1,100 @@
+package frc.robot.util.telemetry;
+
+import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import frc.robot.util.logging.AsyncDataLogger;
+
+import java.util.EnumSet;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Numeric property. Unit conversions are applied as a plain multiplier
+ * (value * scale on the way out, value / scale on the way in) rather than by
+ * wrapping the getter and setter in additional lambdas.
+ */
+public class DoubleProperty extends TelemetryProperty {
+
+    private final DoubleSupplier getter;
+    private final DoubleConsumer setter;
+    private final double scale;
+    private final DoublePublisher publisher;
+    private final DoubleEntry entry;
+    private final int listener;
+    private volatile boolean remoteWrite;
+    private double lastValue;
+
+    public DoubleProperty(NetworkTable table, String name, DoubleSupplier getter, DoubleConsumer setter, double scale) {
+        super(name);
+        this.getter = getter;
+        this.setter = setter;
+        this.scale = scale;
+        if (setter != null) {
+            this.entry = table.getDoubleTopic(name).getEntry(0.0);
+            this.publisher = entry;
+            this.listener = NetworkTableInstance.getDefault().addListener(
+                    entry,
+                    EnumSet.of(NetworkTableEvent.Kind.kValueRemote),
+                    event -> remoteWrite = true);
+        } else {
+            this.entry = null;
+            this.listener = 0;
+            this.publisher = table.getDoubleTopic(name).publish();
+        }
+        this.lastValue = Double.NaN;
+    }
+
+    @Override
+    public boolean write(String text) {
+        if (setter == null) {
+            return false;
+        }
+        try {
+            setter.accept(Double.parseDouble(text) / scale);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        update();
+        return true;
+    }
+
+    @Override
+    protected void pollWrites() {
+        if (remoteWrite) {
+            remoteWrite = false;
+            if (published) {
+                setter.accept(entry.get() / scale);
+            }
+            update();
+        }
+    }
+
+    @Override
+    protected void update() {
+        double value = getter.getAsDouble() * scale;
+        if (!published || changed(lastValue, value, epsilon)) {
+            publisher.set(value);
+            lastValue = value;
+            published = true;
+            if (logKey >= 0) {
+                AsyncDataLogger.recordDouble(logKey, value);
+            }
+        }
+    }
+
+    @Override
+    protected int registerLogChannel(String path) {
+        return AsyncDataLogger.registerDouble(path);
+    }
+
+    @Override
+    protected void close() {
+        if (entry != null) {
+            NetworkTableInstance.getDefault().removeListener(listener);
+        }
+        publisher.close();
+    }
+}
@@ -0,0 +1,30 @@
+package frc.robot.util.telemetry;
+
+/**
+ * How often the {@link TelemetryEngine} samples a property. Properties in the
+ * slower tiers are spread across loop cycles, so e.g. with 50 properties in
+ * {@link #SLOW} each loop only samples two of them.
+ */
+public enum PublishRate {
+
+    /** Every loop (50Hz) - for fast signals like velocity and current */
+    FAST(1),
+
+    /** Every 5th loop (10Hz) - for state that drivers and mentors watch */
+    NORMAL(5),
+
+    /** Every 25th loop (2Hz) - for slowly changing values */
+    SLOW(25),
+
+    /**
+     * Every 50th loop (1Hz), plus immediately after the value is edited on the
+     * dashboard - for tuning constants that only change through their setter
+     */
+    ON_CHANGE(50);
+
+    public final int loopsPerSample;
+
+    PublishRate(int loopsPerSample) {
+        this.loopsPerSample = loopsPerSample;
+    }
+}
@@ -0,0 +1,50 @@
+package frc.robot.util.telemetry;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.StringPublisher;
+import frc.robot.util.logging.AsyncDataLogger;
+
+import java.util.function.Supplier;
+
+/**
+ * Read-only string property. Most of our string values are constants, so the
+ * identity check almost always short-circuits the full comparison.
+ */
+public class StringProperty extends TelemetryProperty {
+
+    private final Supplier<String> getter;
+    private final StringPublisher publisher;
+    private String lastValue;
+
+    public StringProperty(NetworkTable table, String name, Supplier<String> getter) {
+        super(name);
+        this.getter = getter;
+        this.publisher = table.getStringTopic(name).publish();
+    }
+
+    @Override
+    protected void update() {
+        String value = getter.get();
+        if (value == null) {
+            value = "";
+        }
+        if (!published || (value != lastValue && !value.equals(lastValue))) {
+            publisher.set(value);
+            lastValue = value;
+            published = true;
+            if (logKey >= 0) {
+                AsyncDataLogger.recordString(logKey, value);
+            }
+        }
+    }
+
+    @Override
+    protected int registerLogChannel(String path) {
+        return AsyncDataLogger.registerString(path);
+    }
+
+    @Override
+    protected void close() {
+        publisher.close();
+    }
+}
@@ -0,0 +1,78 @@
+package frc.robot.util.telemetry;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.RawPublisher;
+import edu.wpi.first.util.struct.Struct;
+import frc.robot.util.logging.AsyncDataLogger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Supplier;
+
+/**
+ * Read-only property serialized with a WPILib {@link Struct}. Values are packed
+ * into a direct buffer that is allocated once, compared byte-for-byte against
+ * the last value sent, and handed to NetworkTables without any copying. The
+ * topic carries the struct's type string and schema, so AdvantageScope and
+ * Glass decode it natively.
+ */
+public class StructProperty<T> extends TelemetryProperty {
+
+    private final Supplier<T> getter;
+    private final Struct<T> struct;
+    private final RawPublisher publisher;
+    private final ByteBuffer buffer;
+    private final ByteBuffer lastBuffer;
+    private final int size;
+
+    public StructProperty(NetworkTable table, String name, Struct<T> struct, Supplier<T> getter) {
+        super(name);
+        NetworkTableInstance.getDefault().addSchema(struct);
+        this.getter = getter;
+        this.struct = struct;
+        this.publisher = table.getRawTopic(name).publish(struct.getTypeString());
+        this.size = struct.getSize();
+        this.buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        this.lastBuffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public Struct<T> getStruct() {
+        return struct;
+    }
+
+    @Override
+    protected void update() {
+
+        // A null value means "nothing new to show", so we leave the last
+        // published value in place
+        T value = getter.get();
+        if (value == null) {
+            return;
+        }
+
+        buffer.clear();
+        struct.pack(buffer, value);
+        buffer.flip();
+
+        if (!published || !buffer.equals(lastBuffer)) {
+            publisher.set(buffer);
+            lastBuffer.clear();
+            lastBuffer.put(0, buffer, 0, size);
+            published = true;
+            if (logKey >= 0) {
+                AsyncDataLogger.recordRaw(logKey, buffer);
+            }
+        }
+    }
+
+    @Override
+    protected int registerLogChannel(String path) {
+        return AsyncDataLogger.registerStruct(path, struct);
+    }
+
+    @Override
+    protected void close() {
+        publisher.close();
+    }
+}
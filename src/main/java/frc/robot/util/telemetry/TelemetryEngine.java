@@ -0,0 +1,163 @@
+package frc.robot.util.telemetry;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.util.logging.AsyncDataLogger;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replacement for the {@link edu.wpi.first.wpilibj.smartdashboard.SmartDashboard}
+ * machinery behind {@link frc.robot.util.SmarterDashboard}. Instead of having
+ * every property pushed through a SendableBuilder every loop, we register a typed
+ * publisher for each property once, sample all of them in a single pass from
+ * {@link #update()}, and only send the values that have changed.
+ *
+ * Values are published under the same "SmartDashboard/[group]/[property]" keys
+ * that SmartDashboard used, so existing dashboard layouts keep working.
+ *
+ * Each property belongs to a {@link PublishRate} tier. A tier that samples every
+ * N loops is split into N slots, and each loop only visits one slot, so the cost
+ * of the slow tiers is spread evenly instead of landing on a single cycle.
+ *
+ * Once {@link #enableLogging()} has been called, every value that gets
+ * published is also recorded to the on-robot log by the {@link AsyncDataLogger}.
+ */
+public class TelemetryEngine {
+
+    public static final String ROOT_TABLE = "SmartDashboard";
+    public static final double DEFAULT_EPSILON = 1e-6;
+
+    private static final Map<String, List<TelemetryProperty>> groups = new HashMap<>();
+    private static final List<TelemetryProperty> properties = new ArrayList<>();
+    private static final PublishRate [] rates = PublishRate.values();
+    private static final Map<PublishRate, List<TelemetryProperty>> tiers = new EnumMap<>(PublishRate.class);
+    private static double defaultEpsilon = DEFAULT_EPSILON;
+    private static long cycle = 0L;
+    private static boolean logging = false;
+
+    static {
+        for (PublishRate rate : rates) {
+            tiers.put(rate, new ArrayList<>());
+        }
+    }
+
+    private TelemetryEngine() {}
+
+    public static double getDefaultEpsilon() {
+        return defaultEpsilon;
+    }
+
+    /**
+     * Sets the epsilon used by numeric properties registered after this call
+     */
+    public static void setDefaultEpsilon(double epsilon) {
+        defaultEpsilon = epsilon;
+    }
+
+    /**
+     * Starts the {@link AsyncDataLogger} and records every property (including
+     * ones registered later) to the log under its NetworkTables path
+     */
+    public static void enableLogging() {
+        if (!logging) {
+            logging = true;
+            AsyncDataLogger.start();
+            for (Map.Entry<String, List<TelemetryProperty>> group : groups.entrySet()) {
+                for (TelemetryProperty property : group.getValue()) {
+                    property.startLogging(getLogPath(group.getKey(), property));
+                }
+            }
+        }
+    }
+
+    private static String getLogPath(String group, TelemetryProperty property) {
+        return ROOT_TABLE + "/" + group + "/" + property.getName();
+    }
+
+    public static NetworkTable getTable(String group) {
+        return NetworkTableInstance.getDefault().getTable(ROOT_TABLE).getSubTable(group);
+    }
+
+    /**
+     * Writes a value to a property as if it had come from the dashboard
+     * @return false if there's no such writable property, or the value
+     * doesn't parse
+     */
+    public static boolean write(String group, String name, String text) {
+        List<TelemetryProperty> members = groups.get(group);
+        if (members != null) {
+            for (TelemetryProperty property : members) {
+                if (property.getName().equals(name)) {
+                    return property.write(text);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all properties registered under the supplied group (e.g. when a
+     * command with the same dashboard name gets constructed a second time)
+     */
+    public static void removeGroup(String group) {
+        List<TelemetryProperty> removed = groups.remove(group);
+        if (removed != null) {
+            for (TelemetryProperty property : removed) {
+                properties.remove(property);
+                tiers.get(property.rate).remove(property);
+                property.close();
+            }
+        }
+    }
+
+    public static <T extends TelemetryProperty> T register(String group, T property) {
+        groups.computeIfAbsent(group, key -> new ArrayList<>()).add(property);
+        properties.add(property);
+        tiers.get(property.rate).add(property);
+        if (logging) {
+            property.startLogging(getLogPath(group, property));
+        }
+        return property;
+    }
+
+    static void reschedule(TelemetryProperty property, PublishRate rate) {
+        if (property.rate != rate) {
+            if (tiers.get(property.rate).remove(property)) {
+                tiers.get(rate).add(property);
+            }
+            property.rate = rate;
+        }
+    }
+
+    /**
+     * Applies dashboard edits, then samples this loop's share of each tier and
+     * publishes the properties that changed. Call this once at the end of
+     * robotPeriodic.
+     */
+    public static void update() {
+
+        if (logging) {
+            AsyncDataLogger.setTimestamp(RobotController.getFPGATime());
+        }
+
+        for (int i=0; i<properties.size(); i++) {
+            properties.get(i).pollWrites();
+        }
+
+        for (PublishRate rate : rates) {
+            List<TelemetryProperty> tier = tiers.get(rate);
+            int step = rate.loopsPerSample;
+            for (int i=(int)(cycle % step); i<tier.size(); i+=step) {
+                tier.get(i).update();
+            }
+        }
+
+        cycle++;
+    }
+}
@@ -0,0 +1,103 @@
+package frc.robot.util.telemetry;
+
+/**
+ * A single value published by the {@link TelemetryEngine}. Each property owns
+ * its NetworkTables publisher (created once at registration) and remembers the
+ * last value it sent, so that {@link #update()} only touches NetworkTables when
+ * something actually changed.
+ */
+public abstract class TelemetryProperty {
+
+    protected final String name;
+    protected double epsilon;
+    protected boolean published;
+    protected int logKey;
+    PublishRate rate;
+
+    protected TelemetryProperty(String name) {
+        this.name = name;
+        this.epsilon = TelemetryEngine.getDefaultEpsilon();
+        this.published = false;
+        this.logKey = -1;
+        this.rate = PublishRate.FAST;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public PublishRate getRate() {
+        return rate;
+    }
+
+    /**
+     * Moves this property to a different publishing tier
+     */
+    public TelemetryProperty atRate(PublishRate rate) {
+        TelemetryEngine.reschedule(this, rate);
+        return this;
+    }
+
+    /**
+     * Sets the smallest change in value that will cause this property to be
+     * republished (only meaningful for numeric properties)
+     */
+    public TelemetryProperty withEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+        return this;
+    }
+
+    /**
+     * Samples the current value and publishes it if it has changed since the
+     * last time it was sent
+     */
+    protected abstract void update();
+
+    /**
+     * Called every loop regardless of tier. Writable properties use this to
+     * apply dashboard edits (and republish) as soon as they arrive.
+     */
+    protected void pollWrites() {
+    }
+
+    /**
+     * Applies a value as if it had been typed into the dashboard (e.g. to
+     * try different tuning in a replay)
+     * @return false if this property can't be written or the text doesn't parse
+     */
+    public boolean write(String text) {
+        return false;
+    }
+
+    /**
+     * Registers a log channel for this property; from then on every value it
+     * publishes is also recorded by the {@link frc.robot.util.logging.AsyncDataLogger}
+     */
+    void startLogging(String path) {
+        if (logKey < 0) {
+            logKey = registerLogChannel(path);
+            published = false;
+        }
+    }
+
+    /**
+     * @return the key of a log channel suitable for this property's values
+     */
+    protected abstract int registerLogChannel(String path);
+
+    /**
+     * Releases the NetworkTables handles owned by this property
+     */
+    protected abstract void close();
+
+    /**
+     * @return true if the two values differ by more than epsilon (two NaNs
+     * are considered equal, so an unset value isn't republished every loop)
+     */
+    protected static boolean changed(double lastValue, double newValue, double epsilon) {
+        if (Double.compare(lastValue, newValue) == 0) {
+            return false;
+        }
+        return !(Math.abs(newValue - lastValue) <= epsilon);
+    }
+}
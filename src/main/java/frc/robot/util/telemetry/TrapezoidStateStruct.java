@@ -0,0 +1,48 @@
+package frc.robot.util.telemetry;
+
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.util.struct.Struct;
+
+import java.nio.ByteBuffer;
+
+/**
+ * WPILib doesn't ship a struct for {@link TrapezoidProfile.State}, so this is
+ * ours. It's just the two doubles.
+ */
+public class TrapezoidStateStruct implements Struct<TrapezoidProfile.State> {
+
+    public static final TrapezoidStateStruct INSTANCE = new TrapezoidStateStruct();
+
+    @Override
+    public Class<TrapezoidProfile.State> getTypeClass() {
+        return TrapezoidProfile.State.class;
+    }
+
+    @Override
+    public String getTypeString() {
+        return "struct:TrapezoidProfileState";
+    }
+
+    @Override
+    public int getSize() {
+        return kSizeDouble * 2;
+    }
+
+    @Override
+    public String getSchema() {
+        return "double position;double velocity";
+    }
+
+    @Override
+    public TrapezoidProfile.State unpack(ByteBuffer bb) {
+        double position = bb.getDouble();
+        double velocity = bb.getDouble();
+        return new TrapezoidProfile.State(position, velocity);
+    }
+
+    @Override
+    public void pack(ByteBuffer bb, TrapezoidProfile.State value) {
+        bb.putDouble(value.position);
+        bb.putDouble(value.velocity);
+    }
+}
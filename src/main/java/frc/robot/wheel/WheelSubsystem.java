@@ -3,9 +3,18 @@ package frc.robot.wheel;
 import com.revrobotics.*;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.MotorOutputGateway;
+import frc.robot.util.SensorSampler;
+import frc.robot.util.SensorSnapshot;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.SparkMaxFrameProfile;
+import frc.robot.util.logging.EventLog;
+import frc.robot.util.profiling.LatencyTracer;
+import frc.robot.util.profiling.LoopProfiler;
+import frc.robot.util.telemetry.PublishRate;
 
 /**
  * Simple subsystem that controls a spinning wheel. Allows setting the a target output
@@ -27,9 +36,21 @@ public class WheelSubsystem extends SubsystemBase {
     public static final double KP = 1.0;
     public static final double KV = 1.0;
 
+    // Slots in the sensor snapshot
+    private static final int AMPS = 0;
+    private static final int RPM = 1;
+
+    private final String name;
     private final CANSparkMax motor;
     private final RelativeEncoder encoder;
     private final SparkPIDController pid;
+    private final MotorOutputGateway output;
+    private final LoopProfiler.Section periodicTimer;
+    private final LatencyTracer.Path sampleToOutput;
+    private final SensorSnapshot sensors;
+    private final EventLog inputs;
+    private final double [] sensorValues;
+    private boolean sampledInBackground;
     private SimpleMotorFeedforward ff;
     private double currentOutputAmps;
     private double currentRotationsPerMinute;
@@ -38,9 +59,11 @@ public class WheelSubsystem extends SubsystemBase {
     private double targetOutput;
     private double targetRotationsPerMinute;
     private boolean brakeEnabled;
+    private boolean statusFramesOk;
 
     public WheelSubsystem(int canId) {
 
+        name = "WheelSubsystem-" + canId;
         motor = new CANSparkMax(canId, CANSparkLowLevel.MotorType.kBrushless);
         motor.setIdleMode(CANSparkBase.IdleMode.kCoast);
         motor.setSmartCurrentLimit(MAX_AMPS);
@@ -51,8 +74,18 @@ public class WheelSubsystem extends SubsystemBase {
 
         brakeEnabled = false;
 
+        statusFramesOk = SparkMaxFrameProfile.VELOCITY_WHEEL.apply(motor, name);
+
         encoder = motor.getEncoder();
 
+        periodicTimer = LoopProfiler.section("WheelSubsystem-" + canId + ".periodic");
+        sampleToOutput = LatencyTracer.path("WheelSubsystem-" + canId + "/SampleToOutput");
+
+        sensors = new SensorSnapshot(2);
+        sensorValues = new double[2];
+        inputs = new EventLog(getInputsLogName(canId), "sampled", "amps", "rpm");
+        sampledInBackground = false;
+
         // By applying the gear ratio here, the velocity returned by the encoder
         // will be the velocity of the attached wheel (not the motor), in the usual
         // REV units which are rotations per minute
@@ -61,6 +94,8 @@ public class WheelSubsystem extends SubsystemBase {
         pid = motor.getPIDController();
         pid.setP(KP);
 
+        output = new MotorOutputGateway(motor);
+
         ff = new SimpleMotorFeedforward(0.0, KV);
 
         targetOutput = 0.0;
@@ -68,16 +103,55 @@ public class WheelSubsystem extends SubsystemBase {
         lastFeedforward = 0.0;
 
         SmarterDashboard.putData("WheelSubsystem", builder -> {
-            builder.addBoolean("BrakeEnabled?", () -> brakeEnabled, this::setBrakeEnabled);
-            builder.addDouble("CurrentAmps", () -> currentOutputAmps);
-            builder.addDouble("CurrentFps", () -> currentFeetPerSecond);
-            builder.addDouble("CurrentRpm", () -> currentRotationsPerMinute);
-            builder.addDouble("LastFeedforward", () -> lastFeedforward);
-            builder.addDouble("TargetOutput", () -> targetOutput);
-            builder.addDouble("TargetRpm", () -> targetRotationsPerMinute);
+            builder.addBoolean("BrakeEnabled?", () -> brakeEnabled, this::setBrakeEnabled).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("CurrentAmps", () -> currentOutputAmps).atRate(PublishRate.FAST);
+            builder.addDouble("CurrentFps", () -> currentFeetPerSecond).atRate(PublishRate.FAST);
+            builder.addDouble("CurrentRpm", () -> currentRotationsPerMinute).atRate(PublishRate.FAST);
+            builder.addDouble("LastFeedforward", () -> lastFeedforward).atRate(PublishRate.FAST);
+            builder.addBoolean("StatusFramesOk?", () -> statusFramesOk).atRate(PublishRate.SLOW);
+            builder.addDouble("TargetOutput", () -> targetOutput).atRate(PublishRate.NORMAL);
+            builder.addDouble("TargetRpm", () -> targetRotationsPerMinute).atRate(PublishRate.NORMAL);
         });
     }
 
+    /**
+     * Moves the CAN reads for this subsystem onto the supplied sampler's
+     * thread; periodic() will use the most recent snapshot instead
+     */
+    public void useSampler(SensorSampler sampler) {
+        sampledInBackground = true;
+        sampler.addSource(this::sampleSensors);
+    }
+
+    /**
+     * @return name of the log channel the sensor values of the wheel on the
+     * supplied CAN id are recorded to
+     */
+    public static String getInputsLogName(int canId) {
+        return "WheelSubsystem-" + canId + "/Inputs";
+    }
+
+    /**
+     * Replaces the hardware with recorded sensor values (in the order they're
+     * logged, starting at the supplied offset); periodic() will use these
+     * until the next call
+     */
+    public void replaySensors(long timestampMicros, double [] values, int offset) {
+        sampledInBackground = true;
+        sensors.beginWrite(timestampMicros);
+        for (int i=0; i<sensors.size(); i++) {
+            sensors.set(i, values[offset + i]);
+        }
+        sensors.endWrite();
+    }
+
+    private void sampleSensors(long timestamp) {
+        sensors.beginWrite(timestamp);
+        sensors.set(AMPS, motor.getOutputCurrent());
+        sensors.set(RPM, encoder.getVelocity());
+        sensors.endWrite();
+    }
+
     public double getP() {
         return pid.getP();
     }
@@ -106,7 +180,7 @@ public class WheelSubsystem extends SubsystemBase {
 
     public void setBrakeEnabled(boolean enabled) {
         if (brakeEnabled != enabled) {
-            motor.setIdleMode(enabled ? CANSparkBase.IdleMode.kBrake : CANSparkBase.IdleMode.kCoast);
+            output.setIdleMode(enabled ? CANSparkBase.IdleMode.kBrake : CANSparkBase.IdleMode.kCoast);
             brakeEnabled = enabled;
         }
     }
@@ -114,16 +188,34 @@ public class WheelSubsystem extends SubsystemBase {
     @Override
     public void periodic() {
 
-        currentOutputAmps = motor.getOutputCurrent();
-        currentRotationsPerMinute = encoder.getVelocity();
+        long start = periodicTimer.start();
+
+        // a controller that browned out is back on the default frame periods
+        statusFramesOk = SparkMaxFrameProfile.VELOCITY_WHEEL.reapplyIfReset(motor, name, statusFramesOk);
+
+        if (!sampledInBackground) {
+            sampleSensors(RobotController.getFPGATime());
+        }
+        long sampled = sensors.read(sensorValues);
+        inputs.begin().add(sampled).add(sensorValues[AMPS]).add(sensorValues[RPM]).end();
+
+        currentOutputAmps = sensorValues[AMPS];
+        currentRotationsPerMinute = sensorValues[RPM];
         currentFeetPerSecond = currentRotationsPerMinute * WHEEL_CIRCUMFERENCE / 60.0;
 
+        boolean sent;
         if (Double.isFinite(targetRotationsPerMinute)) {
             lastFeedforward = ff.calculate(targetRotationsPerMinute);
-            pid.setReference(targetRotationsPerMinute, CANSparkBase.ControlType.kVelocity, 0, lastFeedforward);
+            sent = output.setReference(targetRotationsPerMinute, CANSparkBase.ControlType.kVelocity, 0, lastFeedforward);
         } else {
-            motor.set(targetOutput);
+            sent = output.set(targetOutput);
         }
+        // only writes that actually went out count as actuation
+        if (sent) {
+            sampleToOutput.record(sampled);
+        }
+
+        periodicTimer.stop(start);
     }
 
     public Command rpmCommand(double rpm) {
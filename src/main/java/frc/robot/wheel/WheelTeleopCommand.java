@@ -3,6 +3,7 @@ package frc.robot.wheel;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
 
 import java.util.function.DoubleSupplier;
 
@@ -26,7 +27,7 @@ public class WheelTeleopCommand extends Command {
         addRequirements(wheel);
 
         SmarterDashboard.putData("WheelTeleopCommand", builder -> {
-            builder.addDouble("LastOutput", () -> lastOutput);
+            builder.addDouble("LastOutput", () -> lastOutput).atRate(PublishRate.NORMAL);
         });
     }
 
@@ -3,6 +3,7 @@ package frc.robot.wheel;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.util.SmarterDashboard;
+import frc.robot.util.telemetry.PublishRate;
 
 /**
  * Command for use in tuning the {@link WheelSubsystem}
@@ -24,10 +25,10 @@ public class WheelTuningCommand extends Command {
         addRequirements(wheel);
 
         SmarterDashboard.putData("ShooterTuningCommand", builder -> {
-            builder.addBoolean("Enabled?", () -> isEnabled, this::setEnabled);
-            builder.addDouble("kP", wheel::getP, wheel::setP);
-            builder.addDouble("kV", wheel::getV, wheel::setV);
-            builder.addDouble("SetpointRpm", () -> setpointRevolutionsPerMinute, val -> setpointRevolutionsPerMinute = val);
+            builder.addBoolean("Enabled?", () -> isEnabled, this::setEnabled).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("kP", wheel::getP, wheel::setP).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("kV", wheel::getV, wheel::setV).atRate(PublishRate.ON_CHANGE);
+            builder.addDouble("SetpointRpm", () -> setpointRevolutionsPerMinute, val -> setpointRevolutionsPerMinute = val).atRate(PublishRate.ON_CHANGE);
         });
     }
 
@@ -0,0 +1,53 @@
+package frc.robot.limelight;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimelightFrameQueueTest {
+
+    @Test
+    void framesKeepKindTimestampAndLength() {
+        LimelightFrameQueue queue = new LimelightFrameQueue(8);
+        double [] pose = { 1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 7.0 };
+        assertTrue(queue.offer(LimelightFrameQueue.POSE, 100L, pose, 5));
+        assertTrue(queue.offer(LimelightFrameQueue.PIPELINE, 200L, 2.0));
+
+        double [] out = new double[LimelightFrameQueue.FRAME_VALUES];
+        int slot = queue.peek();
+        assertEquals(LimelightFrameQueue.POSE, queue.kind(slot));
+        assertEquals(100L, queue.timestamp(slot));
+        assertEquals(5, queue.copy(slot, out));
+        assertEquals(5.0, out[4]);
+        queue.release();
+
+        slot = queue.peek();
+        assertEquals(LimelightFrameQueue.PIPELINE, queue.kind(slot));
+        assertEquals(1, queue.length(slot));
+        assertEquals(2.0, queue.value(slot));
+        queue.release();
+        assertEquals(-1, queue.peek());
+    }
+
+    @Test
+    void longFramesAreTruncated() {
+        LimelightFrameQueue queue = new LimelightFrameQueue(2);
+        double [] frame = new double[LimelightFrameQueue.FRAME_VALUES + 10];
+        assertTrue(queue.offer(LimelightFrameQueue.FIDUCIALS, 1L, frame));
+        assertEquals(LimelightFrameQueue.FRAME_VALUES, queue.length(queue.peek()));
+    }
+
+    @Test
+    void fullQueueDropsNewFrames() {
+        LimelightFrameQueue queue = new LimelightFrameQueue(2);
+        int capacity = queue.getCapacity();
+        for (int i=0; i<capacity; i++) {
+            assertTrue(queue.offer(LimelightFrameQueue.TARGET, i, i));
+        }
+        assertFalse(queue.offer(LimelightFrameQueue.TARGET, 99L, 99.0));
+        assertEquals(1, queue.getDropped());
+        assertEquals(0L, queue.timestamp(queue.peek()));
+    }
+}
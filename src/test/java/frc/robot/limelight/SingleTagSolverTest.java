@@ -0,0 +1,99 @@
+package frc.robot.limelight;
+
+import edu.wpi.first.math.MathUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleTagSolverTest {
+
+    private static final double EPSILON = 1e-6;
+    private static final CameraMount MOUNT = new CameraMount(0.3, 0.1, 0.5, 0.0, Math.toRadians(20.0));
+
+    private SingleTagSolver solver;
+    private RawFiducials fiducials;
+    private PoseEstimate estimate;
+    private int id;
+    private double robotX;
+    private double robotY;
+    private double heading;
+
+    @BeforeEach
+    void setUp() {
+        solver = new SingleTagSolver();
+        fiducials = new RawFiducials();
+        estimate = new PoseEstimate();
+
+        id = 1;
+        while (!FieldTagLayout.hasTag(id)) {
+            id++;
+        }
+
+        // a few meters out in front of the tag, off to one side, turned
+        // slightly away from it
+        double facing = FieldTagLayout.getYaw(id);
+        robotX = FieldTagLayout.getX(id) + 3.0 * Math.cos(facing) - 0.5 * Math.sin(facing);
+        robotY = FieldTagLayout.getY(id) + 3.0 * Math.sin(facing) + 0.5 * Math.cos(facing);
+        heading = facing + Math.PI + 0.1;
+    }
+
+    // fills in the fiducials with what the camera would see from our pose
+    private void observe(boolean reportDistance, double ambiguity) {
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        double cameraX = robotX + MOUNT.forward * cos - MOUNT.left * sin;
+        double cameraY = robotY + MOUNT.forward * sin + MOUNT.left * cos;
+        double dx = FieldTagLayout.getX(id) - cameraX;
+        double dy = FieldTagLayout.getY(id) - cameraY;
+        double dz = FieldTagLayout.getZ(id) - MOUNT.height;
+        double planar = Math.hypot(dx, dy);
+
+        double horizontal = MathUtil.angleModulus(Math.atan2(dy, dx) - heading - MOUNT.yaw);
+        double vertical = Math.atan2(dz, planar) - MOUNT.pitch;
+        double [] array = {
+                id,
+                -Math.toDegrees(horizontal),
+                Math.toDegrees(vertical),
+                0.1,
+                reportDistance ? Math.hypot(planar, dz) : 0.0,
+                0.0,
+                ambiguity
+        };
+        fiducials.update(2.0, array, array.length);
+    }
+
+    @Test
+    void solvesFromReportedDistance() {
+        observe(true, 0.0);
+        assertTrue(solver.solve(MOUNT, fiducials, 0, heading, estimate));
+        assertEquals(robotX, estimate.x, EPSILON);
+        assertEquals(robotY, estimate.y, EPSILON);
+        assertEquals(Math.toDegrees(heading), estimate.yawDegrees, EPSILON);
+        assertEquals(2.0, estimate.timestampSeconds, EPSILON);
+        assertEquals(1, estimate.tagCount);
+    }
+
+    @Test
+    void fallsBackToVerticalAngle() {
+        observe(false, 0.0);
+        assertTrue(solver.solve(MOUNT, fiducials, 0, heading, estimate));
+        assertEquals(robotX, estimate.x, EPSILON);
+        assertEquals(robotY, estimate.y, EPSILON);
+    }
+
+    @Test
+    void rejectsAmbiguousTags() {
+        observe(true, SingleTagSolver.DEFAULT_MAX_AMBIGUITY * 2.0);
+        assertFalse(solver.solve(MOUNT, fiducials, 0, heading, estimate));
+    }
+
+    @Test
+    void rejectsUnknownTags() {
+        observe(true, 0.0);
+        fiducials.ids[0] = FieldTagLayout.MAX_ID + 1;
+        assertFalse(solver.solve(MOUNT, fiducials, 0, heading, estimate));
+    }
+}
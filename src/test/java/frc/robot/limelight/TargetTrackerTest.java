@@ -0,0 +1,68 @@
+package frc.robot.limelight;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TargetTrackerTest {
+
+    private static final double EPSILON = 1e-9;
+
+    private TargetTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new TargetTracker();
+        tracker.predict(1.0, 0.0);
+    }
+
+    @Test
+    void firstMeasurementStartsTracking() {
+        assertFalse(tracker.isTracking());
+        tracker.correct(1.0, 5.0, 0.0);
+        assertTrue(tracker.isTracking());
+        assertEquals(5.0, tracker.getBearing(), EPSILON);
+        assertEquals(1.0, tracker.getLastMeasurementTimestamp(), EPSILON);
+    }
+
+    @Test
+    void turningCounterClockwiseMovesTargetRight() {
+        tracker.correct(1.0, 0.0, 0.0);
+        tracker.predict(1.1, 1.0);
+        assertEquals(Math.toDegrees(0.1), tracker.getBearing(), EPSILON);
+    }
+
+    @Test
+    void measurementIncludesTurnSinceCapture() {
+        tracker.correct(1.0, 3.0, Math.toRadians(2.0));
+        assertEquals(5.0, tracker.getBearing(), EPSILON);
+    }
+
+    @Test
+    void staleCapturesAreIgnored() {
+        tracker.correct(1.0, 5.0, 0.0);
+        tracker.correct(0.9, -5.0, 0.0);
+        tracker.correct(1.0, -5.0, 0.0);
+        assertEquals(5.0, tracker.getBearing(), EPSILON);
+    }
+
+    @Test
+    void laterMeasurementsAreBlended() {
+        tracker.correct(1.0, 4.0, 0.0);
+        tracker.correct(1.02, 6.0, 0.0);
+        assertTrue(tracker.getBearing() > 4.0);
+        assertTrue(tracker.getBearing() < 6.0);
+    }
+
+    @Test
+    void trackIsDroppedAfterTimeout() {
+        tracker.correct(1.0, 5.0, 0.0);
+        tracker.predict(1.0 + TargetTracker.DEFAULT_TIMEOUT / 2.0, 0.0);
+        assertTrue(tracker.isTracking());
+        tracker.predict(1.0 + TargetTracker.DEFAULT_TIMEOUT * 2.0, 0.0);
+        assertFalse(tracker.isTracking());
+    }
+}
@@ -0,0 +1,136 @@
+package frc.robot.limelight;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.swerve.LatencyCompensatedPoseEstimator;
+import frc.robot.swerve.SwerveDriveSubsystem;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VisionMeasurementFilterTest {
+
+    private static final double DT = 0.02;
+    private static final double EPSILON = 1e-6;
+
+    // just enough drive for the filter: an estimator and a speed
+    private static class TestDrive implements SwerveDriveSubsystem {
+
+        final LatencyCompensatedPoseEstimator estimator = new LatencyCompensatedPoseEstimator("TestDrive/Estimator");
+        final ChassisSpeeds speeds = new ChassisSpeeds();
+
+        @Override
+        public Pose2d getPose() {
+            return estimator.getPose();
+        }
+
+        @Override
+        public ChassisSpeeds getSpeeds() {
+            return speeds;
+        }
+
+        @Override
+        public LatencyCompensatedPoseEstimator getPoseEstimator() {
+            return estimator;
+        }
+
+        @Override
+        public void driveRobotRelative(ChassisSpeeds speeds) {
+
+        }
+    }
+
+    private TestDrive drive;
+    private VisionMeasurementFilter filter;
+    private double time;
+
+    @BeforeEach
+    void setUp() {
+        // like every drive we have, odometry starts at the origin
+        drive = new TestDrive();
+        drive.estimator.resetPose(0.0, new Pose2d());
+        filter = new VisionMeasurementFilter(drive);
+        time = 0.0;
+    }
+
+    // drives forward (robot-relative) at the supplied speed for a while
+    private void drive(double speed, double seconds) {
+        drive.speeds.vxMetersPerSecond = speed;
+        for (int i=0; i<Math.round(seconds / DT); i++) {
+            time += DT;
+            drive.estimator.addOdometry(time, speed * DT, 0.0, 0.0);
+        }
+    }
+
+    private static PoseEstimate estimate(double x, double y, double yawDegrees, double timestamp, int tags) {
+        PoseEstimate estimate = new PoseEstimate();
+        estimate.set(x, y, yawDegrees, timestamp, 0.03, tags, 1.0, 2.0, 0.5);
+        return estimate;
+    }
+
+    // what AprilTagPoseEstimateCommand does with a MegaTag1 estimate
+    private boolean seed(PoseEstimate estimate) {
+        if (filter.needsSeed() && filter.testSeed(estimate)) {
+            drive.estimator.seedPose(estimate.timestampSeconds, estimate.x, estimate.y, Math.toRadians(estimate.yawDegrees));
+            return true;
+        }
+        return false;
+    }
+
+    @Test
+    void seedsFromFirstMultiTagEstimateAwayFromOrigin() {
+        drive(0.0, 1.0);
+
+        // MegaTag2 was solved with our made-up heading, so it can't seed us
+        assertFalse(filter.test(estimate(5.0, 3.0, 0.0, 0.5, 2)));
+        assertFalse(seed(estimate(5.0, 3.0, 90.0, 0.5, 1)), "a single tag shouldn't seed the pose");
+        assertFalse(filter.isSeeded());
+
+        assertTrue(seed(estimate(5.0, 3.0, 90.0, 0.5, 2)), "the first multi-tag estimate should be taken wherever it is");
+        assertTrue(filter.isSeeded());
+        assertFalse(filter.needsSeed());
+        assertEquals(5.0, drive.estimator.getX(), EPSILON);
+        assertEquals(3.0, drive.estimator.getY(), EPSILON);
+        assertEquals(Math.PI / 2.0, drive.estimator.getTheta(), EPSILON);
+
+        // from now on estimates are checked against odometry and blended in
+        drive(0.0, 0.2);
+        PoseEstimate next = estimate(5.0, 3.05, 90.0, time - 0.05, 2);
+        assertTrue(filter.test(next));
+        drive.acceptPoseEstimate(next, filter.getTranslationStdDev(), filter.getRotationStdDev());
+        assertTrue(drive.estimator.getY() > 3.0 && drive.estimator.getY() < 3.05);
+
+        assertFalse(filter.test(estimate(9.0, 3.0, 90.0, time - 0.05, 2)), "a jump should be rejected once seeded");
+    }
+
+    @Test
+    void seedKeepsMotionSinceCapture() {
+        // the frame was captured half way through a 1m drive
+        drive(1.0, 1.0);
+        assertTrue(seed(estimate(5.0, 3.0, 0.0, 0.5, 2)));
+        assertEquals(5.5, drive.estimator.getX(), EPSILON);
+        assertEquals(3.0, drive.estimator.getY(), EPSILON);
+    }
+
+    @Test
+    void reseedsAfterConsistentJumps() {
+        drive(0.0, 1.0);
+        assertTrue(seed(estimate(5.0, 3.0, 0.0, 0.5, 2)));
+
+        // every camera now agrees we're somewhere else; eventually we believe them
+        int rejected = 0;
+        while (!filter.needsSeed()) {
+            drive(0.0, DT);
+            assertFalse(filter.test(estimate(10.0, 3.0, 0.0, time - DT, 2)));
+            rejected++;
+            assertTrue(rejected <= VisionMeasurementFilter.DEFAULT_RESEED_REJECTIONS);
+        }
+        assertEquals(VisionMeasurementFilter.DEFAULT_RESEED_REJECTIONS, rejected);
+
+        assertTrue(seed(estimate(10.0, 3.0, 0.0, time - DT, 2)));
+        assertEquals(10.0, drive.estimator.getX(), EPSILON);
+    }
+}
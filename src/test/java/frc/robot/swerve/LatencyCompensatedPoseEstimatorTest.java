@@ -0,0 +1,87 @@
+package frc.robot.swerve;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyCompensatedPoseEstimatorTest {
+
+    private static final double DT = 0.02;
+    private static final double EPSILON = 1e-6;
+
+    private LatencyCompensatedPoseEstimator estimator;
+    private double time;
+
+    @BeforeEach
+    void setUp() {
+        estimator = new LatencyCompensatedPoseEstimator("LatencyCompensatedPoseEstimatorTest", 64);
+        estimator.resetPose(0.0, new Pose2d());
+        time = 0.0;
+    }
+
+    // drives forward (robot-relative) for the supplied number of updates
+    private void drive(double meters, int updates) {
+        for (int i=0; i<updates; i++) {
+            time += DT;
+            estimator.addOdometry(time, meters / updates, 0.0, 0.0);
+        }
+    }
+
+    @Test
+    void odometryFollowsHeading() {
+        estimator.resetPose(0.0, new Pose2d(1.0, 2.0, Rotation2d.fromDegrees(90.0)));
+        drive(1.0, 10);
+        assertEquals(1.0, estimator.getX(), EPSILON);
+        assertEquals(3.0, estimator.getY(), EPSILON);
+    }
+
+    @Test
+    void lateMeasurementIsAppliedAtCaptureTime() {
+        drive(1.0, 50);
+
+        // the camera saw us 0.5m further along than odometry did, half way
+        // through the drive; everything since then should move with it
+        assertTrue(estimator.addVisionMeasurement(0.5, 1.0, 0.0, 0.0, 1.0, 1.0));
+        assertEquals(1.5, estimator.getX(), EPSILON);
+        assertEquals(0.0, estimator.getY(), EPSILON);
+    }
+
+    @Test
+    void gainMovesPartOfTheWay() {
+        drive(1.0, 50);
+        assertTrue(estimator.addVisionMeasurement(time, 2.0, 1.0, 0.0, 0.25, 0.0));
+        assertEquals(1.25, estimator.getX(), EPSILON);
+        assertEquals(0.25, estimator.getY(), EPSILON);
+        assertEquals(0.0, estimator.getTheta(), EPSILON);
+    }
+
+    @Test
+    void measurementsOutsideHistoryAreIgnored() {
+        drive(1.0, 100);
+        // the history only holds 64 updates
+        assertFalse(estimator.addVisionMeasurement(0.1, 5.0, 5.0, 0.0, 1.0, 1.0));
+        assertFalse(estimator.addVisionMeasurement(time + 1.0, 5.0, 5.0, 0.0, 1.0, 1.0));
+        assertEquals(1.0, estimator.getX(), EPSILON);
+    }
+
+    @Test
+    void seedFallsBackToReset() {
+        drive(1.0, 100);
+        estimator.seedPose(0.1, 5.0, 4.0, Math.PI);
+        assertEquals(5.0, estimator.getX(), EPSILON);
+        assertEquals(4.0, estimator.getY(), EPSILON);
+        assertEquals(Math.PI, estimator.getTheta(), EPSILON);
+    }
+
+    @Test
+    void gainFromStandardDeviations() {
+        assertEquals(0.5, LatencyCompensatedPoseEstimator.gain(0.1, 0.1), EPSILON);
+        assertEquals(0.0, LatencyCompensatedPoseEstimator.gain(0.1, Double.POSITIVE_INFINITY), EPSILON);
+        assertEquals(0.8, LatencyCompensatedPoseEstimator.gain(0.2, 0.1), EPSILON);
+    }
+}
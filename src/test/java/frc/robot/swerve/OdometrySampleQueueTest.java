@@ -0,0 +1,77 @@
+package frc.robot.swerve;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OdometrySampleQueueTest {
+
+    @Test
+    void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(64, new OdometrySampleQueue(64, 3).getCapacity());
+        assertEquals(64, new OdometrySampleQueue(50, 3).getCapacity());
+        assertEquals(4, new OdometrySampleQueue(3, 3).getCapacity());
+    }
+
+    @Test
+    void samplesComeOutInOrderAndFullQueueDrops() {
+        OdometrySampleQueue queue = new OdometrySampleQueue(4, 2);
+        double [] sample = new double[2];
+        for (int i=0; i<4; i++) {
+            sample[0] = i;
+            sample[1] = -i;
+            assertTrue(queue.offer(i * 0.01, sample));
+        }
+        assertFalse(queue.offer(1.0, sample));
+        assertEquals(1, queue.getDropped());
+        assertEquals(4, queue.size());
+
+        for (int i=0; i<4; i++) {
+            int slot = queue.peek();
+            assertEquals(i * 0.01, queue.timestamp(slot));
+            assertEquals(i, queue.value(slot, 0));
+            assertEquals(-i, queue.value(slot, 1));
+            queue.release();
+        }
+        assertEquals(-1, queue.peek());
+    }
+
+    @Test
+    void producerAndConsumerOnSeparateThreads() throws InterruptedException {
+        OdometrySampleQueue queue = new OdometrySampleQueue(16, 2);
+        int total = 200_000;
+
+        Thread producer = new Thread(() -> {
+            double [] sample = new double[2];
+            for (int i=0; i<total; ) {
+                sample[0] = i;
+                sample[1] = i * 2.0;
+                if (queue.offer(i, sample)) {
+                    i++;
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        });
+        producer.start();
+
+        // every sample should arrive, in order, with its values intact
+        int expected = 0;
+        while (expected < total) {
+            int slot = queue.peek();
+            if (slot < 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            assertEquals(expected, queue.timestamp(slot));
+            assertEquals(expected, queue.value(slot, 0));
+            assertEquals(expected * 2.0, queue.value(slot, 1));
+            queue.release();
+            expected++;
+        }
+        producer.join();
+        assertEquals(-1, queue.peek());
+    }
+}
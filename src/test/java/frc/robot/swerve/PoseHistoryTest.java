@@ -0,0 +1,65 @@
+package frc.robot.swerve;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PoseHistoryTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    void interpolatesBetweenSamples() {
+        PoseHistory history = new PoseHistory(8);
+        history.add(1.0, 0.0, 0.0, 0.0);
+        history.add(2.0, 2.0, -1.0, 1.0);
+
+        double [] out = new double[3];
+        assertTrue(history.sample(1.25, out));
+        assertEquals(0.5, out[PoseHistory.X], EPSILON);
+        assertEquals(-0.25, out[PoseHistory.Y], EPSILON);
+        assertEquals(0.25, out[PoseHistory.THETA], EPSILON);
+
+        assertFalse(history.sample(0.5, out));
+        assertFalse(history.sample(2.5, out));
+    }
+
+    @Test
+    void oldestSamplesAreOverwritten() {
+        PoseHistory history = new PoseHistory(4);
+        for (int i=0; i<10; i++) {
+            history.add(i, i, 0.0, 0.0);
+        }
+        assertEquals(4, history.size());
+        assertEquals(6.0, history.getOldestTimestamp(), EPSILON);
+        assertEquals(9.0, history.getNewestTimestamp(), EPSILON);
+
+        double [] out = new double[3];
+        assertFalse(history.sample(5.5, out));
+        assertTrue(history.sample(8.5, out));
+        assertEquals(8.5, out[PoseHistory.X], EPSILON);
+    }
+
+    @Test
+    void correctionMovesLaterSamplesRigidly() {
+        PoseHistory history = new PoseHistory(8);
+        history.add(0.0, 0.0, 0.0, 0.0);
+        history.add(1.0, 1.0, 0.0, 0.0);
+        history.add(2.0, 2.0, 0.0, 0.0);
+
+        // at t=1 we were really at (5, 5) facing +y; what we drove after
+        // that (1m forward) should now be 1m along +y
+        history.correctFrom(1.0, 1.0, 0.0, 0.0, 5.0, 5.0, Math.PI / 2.0);
+
+        double [] out = new double[3];
+        assertTrue(history.latest(out));
+        assertEquals(5.0, out[PoseHistory.X], EPSILON);
+        assertEquals(6.0, out[PoseHistory.Y], EPSILON);
+        assertEquals(Math.PI / 2.0, out[PoseHistory.THETA], EPSILON);
+
+        assertTrue(history.sample(0.0, out));
+        assertEquals(0.0, out[PoseHistory.X], EPSILON);
+    }
+}
@@ -0,0 +1,78 @@
+package frc.robot.swerve;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SwerveKinematicsTest {
+
+    private static final double EPSILON = 1e-9;
+    private static final double HALF = 0.285;
+    private static final double [] MODULE_X = { HALF, HALF, -HALF, -HALF };
+    private static final double [] MODULE_Y = { HALF, -HALF, HALF, -HALF };
+    private static final double [][] MOTIONS = {
+            { 1.0, 0.0, 0.0 },
+            { 0.0, -2.0, 0.0 },
+            { 0.0, 0.0, 3.0 },
+            { 1.5, 0.7, -2.2 },
+            { -3.0, 1.0, 0.5 }
+    };
+
+    private final SwerveKinematics kinematics = new SwerveKinematics(MODULE_X, MODULE_Y);
+
+    @Test
+    void chassisToModulesAndBack() {
+        double [] speeds = new double[4];
+        double [] angles = new double[4];
+        double [] out = new double[3];
+        for (double [] motion : MOTIONS) {
+            kinematics.toModuleStates(motion[0], motion[1], motion[2], speeds, angles);
+            kinematics.toChassisMotion(speeds, angles, out);
+            assertArrayEquals(motion, out, EPSILON);
+        }
+    }
+
+    @Test
+    void matchesWpilib() {
+        SwerveDriveKinematics wpilib = new SwerveDriveKinematics(
+                new Translation2d(MODULE_X[0], MODULE_Y[0]),
+                new Translation2d(MODULE_X[1], MODULE_Y[1]),
+                new Translation2d(MODULE_X[2], MODULE_Y[2]),
+                new Translation2d(MODULE_X[3], MODULE_Y[3]));
+        double [] speeds = new double[4];
+        double [] angles = new double[4];
+        for (double [] motion : MOTIONS) {
+            kinematics.toModuleStates(motion[0], motion[1], motion[2], speeds, angles);
+            SwerveModuleState [] states = wpilib.toSwerveModuleStates(new ChassisSpeeds(motion[0], motion[1], motion[2]));
+            for (int i=0; i<4; i++) {
+                assertEquals(states[i].speedMetersPerSecond, speeds[i], EPSILON);
+                assertEquals(states[i].angle.getRadians(), angles[i], EPSILON);
+            }
+        }
+    }
+
+    @Test
+    void stoppedModulesKeepTheirAngles() {
+        double [] speeds = new double[4];
+        double [] angles = { 0.1, 0.2, 0.3, 0.4 };
+        kinematics.toModuleStates(0.0, 0.0, 0.0, speeds, angles);
+        assertArrayEquals(new double[] { 0.0, 0.0, 0.0, 0.0 }, speeds, EPSILON);
+        assertArrayEquals(new double[] { 0.1, 0.2, 0.3, 0.4 }, angles, EPSILON);
+    }
+
+    @Test
+    void desaturateKeepsProportions() {
+        double [] speeds = { 2.0, -6.0, 3.0, 1.0 };
+        SwerveKinematics.desaturate(speeds, 4.5);
+        assertArrayEquals(new double[] { 1.5, -4.5, 2.25, 0.75 }, speeds, EPSILON);
+
+        double [] slow = { 1.0, -2.0, 0.5, 0.0 };
+        SwerveKinematics.desaturate(slow, 4.5);
+        assertArrayEquals(new double[] { 1.0, -2.0, 0.5, 0.0 }, slow, EPSILON);
+    }
+}